@@ -0,0 +1,303 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.Set;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.nio.file.OpenOption;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ExecutorService;
+import java.nio.channels.AsynchronousFileChannel;
+import org.lychie.jutil.exception.FileCastException;
+
+/**
+ * 基于 AsynchronousFileChannel 的异步文件读写. 所有通道共用一个小的守护线程池,
+ * 大量传输可以同时进行而不占用调用方线程
+ * 
+ * @author Lychie Fan
+ */
+class AsyncFileIO {
+
+	private static final int EOF = -1;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+	private static final ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(2, Runtime.getRuntime().availableProcessors()),
+			new DaemonThreadFactory("jutil-async-io"));
+
+	/**
+	 * 异步读取文件的全部内容
+	 * 
+	 * @param file
+	 *            文件
+	 * @param handler
+	 *            完成时的回调, 可为null
+	 * @return
+	 */
+	static Future<byte[]> read(File file,
+			CompletionHandler<byte[], File> handler) {
+		AsyncResult<byte[]> result = new AsyncResult<byte[]>(file, handler);
+		AsynchronousFileChannel channel = null;
+		try {
+			channel = open(file, StandardOpenOption.READ);
+			long size = channel.size();
+			if (size > MAX_ARRAY_SIZE) {
+				throw new FileCastException(file + " is too large to read");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			new ReadHandler(channel, buffer, result).next();
+		} catch (Throwable e) {
+			IOUtil.close(channel);
+			result.fail(e);
+		}
+		return result;
+	}
+
+	/**
+	 * 异步写出内容到文件的指定位置
+	 * 
+	 * @param data
+	 *            写出的内容
+	 * @param file
+	 *            目标文件
+	 * @param position
+	 *            写入的起始位置
+	 * @param truncate
+	 *            是否先清空文件
+	 * @param handler
+	 *            完成时的回调, 可为null
+	 * @return 写出的字节数
+	 */
+	static Future<Long> write(ByteBuffer data, File file, long position,
+			boolean truncate, CompletionHandler<Long, File> handler) {
+		AsyncResult<Long> result = new AsyncResult<Long>(file, handler);
+		AsynchronousFileChannel channel = null;
+		try {
+			if (truncate) {
+				channel = open(file, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} else {
+				channel = open(file, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE);
+			}
+			new WriteHandler(channel, data, position, result).next();
+		} catch (Throwable e) {
+			IOUtil.close(channel);
+			result.fail(e);
+		}
+		return result;
+	}
+
+	/**
+	 * 异步拷贝文件内容, 每次读出一个缓冲区后写出, 直到读完整个文件
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param dest
+	 *            目标文件, 已存在时被覆盖
+	 * @param handler
+	 *            完成时的回调, 可为null
+	 * @return 拷贝的字节数
+	 */
+	static Future<Long> copy(File src, File dest,
+			CompletionHandler<Long, File> handler) {
+		AsyncResult<Long> result = new AsyncResult<Long>(dest, handler);
+		AsynchronousFileChannel in = null;
+		AsynchronousFileChannel out = null;
+		try {
+			in = open(src, StandardOpenOption.READ);
+			out = open(dest, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			new CopyHandler(in, out, result).read();
+		} catch (Throwable e) {
+			IOUtil.close(in, out);
+			result.fail(e);
+		}
+		return result;
+	}
+
+	private static AsynchronousFileChannel open(File file,
+			OpenOption... options) throws Exception {
+		Set<OpenOption> set = new HashSet<OpenOption>(Arrays.asList(options));
+		return AsynchronousFileChannel.open(file.toPath(), set, executor);
+	}
+
+	/**
+	 * 循环读取直到缓冲区填满或到达文件末尾
+	 */
+	private static class ReadHandler implements
+			CompletionHandler<Integer, Void> {
+
+		private ByteBuffer buffer;
+		private AsyncResult<byte[]> result;
+		private AsynchronousFileChannel channel;
+
+		public ReadHandler(AsynchronousFileChannel channel, ByteBuffer buffer,
+				AsyncResult<byte[]> result) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.result = result;
+		}
+
+		@Override
+		public void completed(Integer read, Void attachment) {
+			if (read == EOF || !buffer.hasRemaining()) {
+				IOUtil.close(channel);
+				byte[] bytes = buffer.array();
+				if (buffer.hasRemaining()) {
+					bytes = Arrays.copyOf(bytes, buffer.position());
+				}
+				result.complete(bytes);
+			} else {
+				next();
+			}
+		}
+
+		@Override
+		public void failed(Throwable e, Void attachment) {
+			IOUtil.close(channel);
+			result.fail(e);
+		}
+
+		void next() {
+			if (result.isDone()) {
+				IOUtil.close(channel);
+			} else if (!buffer.hasRemaining()) {
+				completed(0, null);
+			} else {
+				channel.read(buffer, buffer.position(), null, this);
+			}
+		}
+
+	}
+
+	/**
+	 * 循环写出直到缓冲区的内容全部写出
+	 */
+	private static class WriteHandler implements
+			CompletionHandler<Integer, Void> {
+
+		private long start;
+		private long position;
+		private ByteBuffer buffer;
+		private AsyncResult<Long> result;
+		private AsynchronousFileChannel channel;
+
+		public WriteHandler(AsynchronousFileChannel channel, ByteBuffer buffer,
+				long position, AsyncResult<Long> result) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.start = position;
+			this.position = position;
+			this.result = result;
+		}
+
+		@Override
+		public void completed(Integer written, Void attachment) {
+			position += written;
+			next();
+		}
+
+		@Override
+		public void failed(Throwable e, Void attachment) {
+			IOUtil.close(channel);
+			result.fail(e);
+		}
+
+		void next() {
+			if (result.isDone()) {
+				IOUtil.close(channel);
+			} else if (!buffer.hasRemaining()) {
+				IOUtil.close(channel);
+				result.complete(position - start);
+			} else {
+				channel.write(buffer, position, null, this);
+			}
+		}
+
+	}
+
+	/**
+	 * 交替读出和写出, 共用一个从缓冲区池借来的直接内存缓冲区
+	 */
+	private static class CopyHandler {
+
+		private long position;
+		private ByteBuffer buffer;
+		private AsyncResult<Long> result;
+		private AsynchronousFileChannel in;
+		private AsynchronousFileChannel out;
+
+		public CopyHandler(AsynchronousFileChannel in,
+				AsynchronousFileChannel out, AsyncResult<Long> result) {
+			this.in = in;
+			this.out = out;
+			this.result = result;
+			this.buffer = BufferPool.getDefault().acquireDirect();
+		}
+
+		void read() {
+			if (result.isDone()) {
+				finish();
+				return;
+			}
+			buffer.clear();
+			in.read(buffer, position, null,
+					new CompletionHandler<Integer, Void>() {
+						@Override
+						public void completed(Integer read, Void attachment) {
+							if (read == EOF) {
+								finish();
+								result.complete(position);
+							} else {
+								buffer.flip();
+								write();
+							}
+						}
+
+						@Override
+						public void failed(Throwable e, Void attachment) {
+							finish();
+							result.fail(e);
+						}
+					});
+		}
+
+		void write() {
+			if (result.isDone()) {
+				finish();
+				return;
+			}
+			out.write(buffer, position, null,
+					new CompletionHandler<Integer, Void>() {
+						@Override
+						public void completed(Integer written, Void attachment) {
+							position += written;
+							if (buffer.hasRemaining()) {
+								write();
+							} else {
+								read();
+							}
+						}
+
+						@Override
+						public void failed(Throwable e, Void attachment) {
+							finish();
+							result.fail(e);
+						}
+					});
+		}
+
+		private void finish() {
+			IOUtil.close(in, out);
+			BufferPool.getDefault().releaseDirect(buffer);
+		}
+
+	}
+
+}
\ No newline at end of file
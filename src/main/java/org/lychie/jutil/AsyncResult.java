@@ -0,0 +1,113 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 异步文件操作的结果, 完成时通知可选的 CompletionHandler
+ * 
+ * @author Lychie Fan
+ */
+class AsyncResult<V> implements Future<V> {
+
+	private V value;
+	private File file;
+	private Throwable error;
+	private boolean cancelled;
+	private CompletionHandler<V, File> handler;
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	AsyncResult(File file, CompletionHandler<V, File> handler) {
+		this.file = file;
+		this.handler = handler;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!done.compareAndSet(false, true)) {
+			return false;
+		}
+		cancelled = true;
+		latch.countDown();
+		if (handler != null) {
+			handler.failed(new CancellationException(), file);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.get();
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return getValue();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getValue();
+	}
+
+	/**
+	 * 操作成功完成
+	 * 
+	 * @param value
+	 *            结果
+	 */
+	void complete(V value) {
+		if (done.compareAndSet(false, true)) {
+			this.value = value;
+			latch.countDown();
+			if (handler != null) {
+				handler.completed(value, file);
+			}
+		}
+	}
+
+	/**
+	 * 操作失败
+	 * 
+	 * @param error
+	 *            异常
+	 */
+	void fail(Throwable error) {
+		if (done.compareAndSet(false, true)) {
+			this.error = error;
+			latch.countDown();
+			if (handler != null) {
+				handler.failed(error, file);
+			}
+		}
+	}
+
+	private V getValue() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (error != null) {
+			throw new ExecutionException(error);
+		}
+		return value;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package org.lychie.jutil;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定大小的 IO 缓冲区池, 提供堆内 byte[] 和直接内存 ByteBuffer 两种缓冲区.
+ * 每个线程优先使用自己缓存的一个缓冲区, 其次从共享的槽位中获取, 都没有时才新分配.
+ * 归还时优先放回共享槽位, 槽位已满时才留在当前线程的缓存中, 再满则丢弃.
+ * 这样线程池中短命的工作线程归还的缓冲区不会随线程结束而丢失.
+ * 池占用的内存上限为共享槽位的个数加上每个线程缓存的一个缓冲区
+ * 
+ * @author Lychie Fan
+ */
+public class BufferPool {
+
+	private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024 / 2;
+	private static final BufferPool defaultPool = new BufferPool(
+			DEFAULT_BUFFER_SIZE, Runtime.getRuntime().availableProcessors() * 2);
+
+	private final int bufferSize;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final ThreadLocal<byte[]> localBytes = new ThreadLocal<byte[]>();
+	private final ThreadLocal<ByteBuffer> localDirect = new ThreadLocal<ByteBuffer>();
+	private final AtomicReferenceArray<byte[]> sharedBytes;
+	private final AtomicReferenceArray<ByteBuffer> sharedDirect;
+
+	/**
+	 * 创建缓冲区池
+	 * 
+	 * @param bufferSize
+	 *            每个缓冲区的字节数
+	 * @param capacity
+	 *            共享槽位的个数, 不包括各线程自己缓存的缓冲区
+	 */
+	public BufferPool(int bufferSize, int capacity) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException(
+					"bufferSize must be greater than 0");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"capacity must be greater than 0");
+		}
+		this.bufferSize = bufferSize;
+		this.sharedBytes = new AtomicReferenceArray<byte[]>(capacity);
+		this.sharedDirect = new AtomicReferenceArray<ByteBuffer>(capacity);
+	}
+
+	/**
+	 * 获取默认的缓冲区池, 缓冲区大小为512K
+	 * 
+	 * @return
+	 */
+	public static BufferPool getDefault() {
+		return defaultPool;
+	}
+
+	/**
+	 * 每个缓冲区的字节数
+	 * 
+	 * @return
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * 借出一个堆内缓冲区, 使用完毕后应调用 release 归还
+	 * 
+	 * @return
+	 */
+	public byte[] acquire() {
+		byte[] buffer = localBytes.get();
+		if (buffer != null) {
+			localBytes.set(null);
+			hits.incrementAndGet();
+			return buffer;
+		}
+		int capacity = sharedBytes.length();
+		int start = index(capacity);
+		for (int i = 0; i < capacity; i++) {
+			buffer = sharedBytes.getAndSet((start + i) % capacity, null);
+			if (buffer != null) {
+				hits.incrementAndGet();
+				return buffer;
+			}
+		}
+		misses.incrementAndGet();
+		return new byte[bufferSize];
+	}
+
+	/**
+	 * 归还堆内缓冲区, 优先放回共享槽位, 大小与池不符或池已满时丢弃
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || buffer.length != bufferSize) {
+			return;
+		}
+		int capacity = sharedBytes.length();
+		int start = index(capacity);
+		for (int i = 0; i < capacity; i++) {
+			if (sharedBytes.compareAndSet((start + i) % capacity, null, buffer)) {
+				return;
+			}
+		}
+		if (localBytes.get() == null) {
+			localBytes.set(buffer);
+		}
+	}
+
+	/**
+	 * 借出一个直接内存缓冲区, 使用完毕后应调用 releaseDirect 归还
+	 * 
+	 * @return
+	 */
+	public ByteBuffer acquireDirect() {
+		ByteBuffer buffer = localDirect.get();
+		if (buffer != null) {
+			localDirect.set(null);
+			hits.incrementAndGet();
+			return buffer;
+		}
+		int capacity = sharedDirect.length();
+		int start = index(capacity);
+		for (int i = 0; i < capacity; i++) {
+			buffer = sharedDirect.getAndSet((start + i) % capacity, null);
+			if (buffer != null) {
+				hits.incrementAndGet();
+				return buffer;
+			}
+		}
+		misses.incrementAndGet();
+		return ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * 归还直接内存缓冲区, 优先放回共享槽位, 大小与池不符或池已满时丢弃
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 */
+	public void releaseDirect(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()
+				|| buffer.capacity() != bufferSize) {
+			return;
+		}
+		buffer.clear();
+		int capacity = sharedDirect.length();
+		int start = index(capacity);
+		for (int i = 0; i < capacity; i++) {
+			if (sharedDirect.compareAndSet((start + i) % capacity, null, buffer)) {
+				return;
+			}
+		}
+		if (localDirect.get() == null) {
+			localDirect.set(buffer);
+		}
+	}
+
+	/**
+	 * 从池中借到缓冲区的次数
+	 * 
+	 * @return
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * 池中无可用缓冲区而新分配的次数
+	 * 
+	 * @return
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "BufferPool[bufferSize=" + bufferSize + ", hits=" + getHits()
+				+ ", misses=" + getMisses() + "]";
+	}
+
+	/**
+	 * 按线程分散起始槽位, 减少线程之间的竞争
+	 */
+	private static int index(int capacity) {
+		return (int) (Thread.currentThread().getId() % capacity);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package org.lychie.jutil;
+
+import java.nio.ByteBuffer;
+import java.io.InputStream;
+
+/**
+ * 以 ByteBuffer 为数据源的输入流, 读取时直接从缓冲区复制, 不额外分配内存.
+ * 缓冲区的内容为 position 到 limit 之间的字节, 读取会移动缓冲区的 position
+ * 
+ * @author Lychie Fan
+ */
+class ByteBufferInputStream extends InputStream {
+
+	private static final int EOF = -1;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * @param buffer
+	 *            数据源, 通常是共享缓冲区的 duplicate
+	 */
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * 数据源缓冲区, 读取它会移动输入流的位置
+	 * 
+	 * @return
+	 */
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : EOF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return EOF;
+		}
+		int n = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		buffer.mark();
+	}
+
+	@Override
+	public synchronized void reset() {
+		buffer.reset();
+	}
+
+}
\ No newline at end of file
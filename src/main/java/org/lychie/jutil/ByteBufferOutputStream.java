@@ -0,0 +1,131 @@
+package org.lychie.jutil;
+
+import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * 写入可增长的直接内存缓冲区的输出流. 空间不足时按倍数重新分配, 旧内容在直接内存之间复制,
+ * 不经过堆内数组. 从文件输入流写入时直接由通道读入缓冲区
+ * 
+ * @author Lychie Fan
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	private static final int EOF = -1;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * @param initialCapacity
+	 *            初始的字节数
+	 */
+	ByteBufferOutputStream(int initialCapacity) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException(
+					"initialCapacity must be greater than 0");
+		}
+		this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		buffer.put(bytes, offset, length);
+	}
+
+	/**
+	 * 写入缓冲区中剩余的全部字节
+	 * 
+	 * @param src
+	 *            源缓冲区
+	 */
+	public void write(ByteBuffer src) {
+		ensureCapacity(src.remaining());
+		buffer.put(src);
+	}
+
+	/**
+	 * 已写入的字节数
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	/**
+	 * 清空已写入的内容, 保留已分配的缓冲区
+	 */
+	public void reset() {
+		buffer.clear();
+	}
+
+	/**
+	 * 已写入内容的视图, 与输出流共享内存, 不复制. 之后的写入可能使其失效
+	 * 
+	 * @return position 为0, limit 为已写入字节数的缓冲区
+	 */
+	public ByteBuffer toByteBuffer() {
+		ByteBuffer view = buffer.duplicate();
+		view.flip();
+		return view;
+	}
+
+	/**
+	 * 读取已写入内容的输入流, 与输出流共享内存, 不复制
+	 * 
+	 * @return
+	 */
+	public InputStream toInputStream() {
+		return new ByteBufferInputStream(toByteBuffer());
+	}
+
+	/**
+	 * 由通道读入直到通道末尾, 预先按通道剩余的字节数分配空间
+	 * 
+	 * @param channel
+	 *            文件通道
+	 * @return 读入的字节数
+	 * @throws IOException
+	 */
+	long transferFrom(FileChannel channel) throws IOException {
+		long remaining = channel.size() - channel.position();
+		ensureCapacity((int) Math.max(1, Math.min(remaining, MAX_CAPACITY)));
+		long total = 0;
+		int read;
+		while ((read = channel.read(buffer)) != EOF) {
+			total += read;
+			if (!buffer.hasRemaining()) {
+				ensureCapacity(1);
+			}
+		}
+		return total;
+	}
+
+	private void ensureCapacity(int length) {
+		if (buffer.remaining() >= length) {
+			return;
+		}
+		long required = (long) buffer.position() + length;
+		if (required > MAX_CAPACITY) {
+			throw new OutOfMemoryError("Required buffer size is too large");
+		}
+		long capacity = Math.max((long) buffer.capacity() * 2, required);
+		ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(capacity,
+				MAX_CAPACITY));
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,346 @@
+package org.lychie.jutil;
+
+import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者单消费者的字节管道, 用于替代 PipedInputStream/PipedOutputStream.
+ * 基于无锁的环形缓冲区, 读写位置各由一方独占, 通过 lazySet 发布, 每次写出或读取一批字节只发布一次.
+ * 等待时先自旋, 再让出CPU, 最后短暂挂起. 只能由一个线程写出, 一个线程读取
+ * 
+ * @author Lychie Fan
+ */
+public class BytePipe {
+
+	private static final int EOF = -1;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int SPINS = Runtime.getRuntime()
+			.availableProcessors() > 1 ? 1024 : 0;
+	private static final int YIELDS = 64;
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final byte[] ring;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	/* 生产者独占 */
+	private long writeIndex;
+	private long cachedHead;
+	/* 消费者独占 */
+	private long readIndex;
+	private long cachedTail;
+	private volatile Thread reader;
+	private volatile Thread writer;
+	private volatile boolean inputClosed;
+	private volatile boolean outputClosed;
+	private final InputStream in = new PipeInputStream();
+	private final OutputStream out = new PipeOutputStream();
+
+	/**
+	 * @param capacity
+	 *            缓冲区字节数, 向上取整为2的幂
+	 */
+	BytePipe(int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity must be between 1 and "
+					+ MAX_CAPACITY);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.ring = new byte[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * 管道的输入流, 供消费者线程读取
+	 * 
+	 * @return
+	 */
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	/**
+	 * 管道的输出流, 供生产者线程写出. 每次 write 调用发布一次, 逐字节写出时应外加缓冲
+	 * 
+	 * @return
+	 */
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * 缓冲区字节数
+	 * 
+	 * @return
+	 */
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * 写出缓冲区中剩余的全部字节, 管道已满时等待消费者读取
+	 * 
+	 * @param src
+	 *            源缓冲区
+	 * @return 写出的字节数
+	 * @throws IOException
+	 *             管道已关闭
+	 */
+	public int write(ByteBuffer src) throws IOException {
+		int total = src.remaining();
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), awaitWritable());
+			int index = (int) writeIndex & mask;
+			int first = Math.min(n, ring.length - index);
+			src.get(ring, index, first);
+			if (n > first) {
+				src.get(ring, 0, n - first);
+			}
+			publish(n);
+		}
+		return total;
+	}
+
+	/**
+	 * 读取可用的字节到缓冲区, 管道为空时等待生产者写出
+	 * 
+	 * @param dst
+	 *            目标缓冲区
+	 * @return 读取的字节数, 生产者已关闭且数据已读完时返回-1
+	 * @throws IOException
+	 *             管道已关闭
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		int available = awaitReadable();
+		if (available == EOF) {
+			return EOF;
+		}
+		int n = Math.min(dst.remaining(), available);
+		int index = (int) readIndex & mask;
+		int first = Math.min(n, ring.length - index);
+		dst.put(ring, index, first);
+		if (n > first) {
+			dst.put(ring, 0, n - first);
+		}
+		consume(n);
+		return n;
+	}
+
+	/**
+	 * 关闭写出端, 消费者读完剩余数据后得到流结束
+	 */
+	public void closeOutput() {
+		outputClosed = true;
+		LockSupport.unpark(reader);
+	}
+
+	/**
+	 * 关闭读取端, 之后的写出抛出异常
+	 */
+	public void closeInput() {
+		inputClosed = true;
+		LockSupport.unpark(writer);
+	}
+
+	private void write(byte[] bytes, int offset, int length)
+			throws IOException {
+		while (length > 0) {
+			int n = Math.min(length, awaitWritable());
+			int index = (int) writeIndex & mask;
+			int first = Math.min(n, ring.length - index);
+			System.arraycopy(bytes, offset, ring, index, first);
+			if (n > first) {
+				System.arraycopy(bytes, offset + first, ring, 0, n - first);
+			}
+			publish(n);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		int available = awaitReadable();
+		if (available == EOF) {
+			return EOF;
+		}
+		int n = Math.min(length, available);
+		int index = (int) readIndex & mask;
+		int first = Math.min(n, ring.length - index);
+		System.arraycopy(ring, index, bytes, offset, first);
+		if (n > first) {
+			System.arraycopy(ring, 0, bytes, offset + first, n - first);
+		}
+		consume(n);
+		return n;
+	}
+
+	/**
+	 * 等待缓冲区有空闲空间
+	 * 
+	 * @return 空闲的字节数
+	 */
+	private int awaitWritable() throws IOException {
+		int free = ring.length - (int) (writeIndex - cachedHead);
+		if (free > 0 && !inputClosed && !outputClosed) {
+			return free;
+		}
+		int count = 0;
+		while (true) {
+			if (inputClosed || outputClosed) {
+				throw new IOException("Pipe closed");
+			}
+			cachedHead = head.get();
+			free = ring.length - (int) (writeIndex - cachedHead);
+			if (free > 0) {
+				return free;
+			}
+			writer = Thread.currentThread();
+			idle(count++);
+			writer = null;
+		}
+	}
+
+	/**
+	 * 等待缓冲区有可读的数据
+	 * 
+	 * @return 可读的字节数, 流结束时返回-1
+	 */
+	private int awaitReadable() throws IOException {
+		if (inputClosed) {
+			throw new IOException("Pipe closed");
+		}
+		int available = (int) (cachedTail - readIndex);
+		if (available > 0) {
+			return available;
+		}
+		int count = 0;
+		while (true) {
+			boolean closed = outputClosed;
+			cachedTail = tail.get();
+			available = (int) (cachedTail - readIndex);
+			if (available > 0) {
+				return available;
+			}
+			if (closed) {
+				return EOF;
+			}
+			if (inputClosed) {
+				throw new IOException("Pipe closed");
+			}
+			reader = Thread.currentThread();
+			idle(count++);
+			reader = null;
+		}
+	}
+
+	private void publish(int n) {
+		writeIndex += n;
+		tail.lazySet(writeIndex);
+		Thread waiter = reader;
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	private void consume(int n) {
+		readIndex += n;
+		head.lazySet(readIndex);
+		Thread waiter = writer;
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	/**
+	 * 自旋, 让出CPU, 最后限时挂起. lazySet 的发布与等待方的登记之间没有全屏障,
+	 * 唤醒可能错过, 限时挂起保证最多延迟一次挂起的时间
+	 */
+	private static void idle(int count) throws InterruptedIOException {
+		if (count < SPINS) {
+			return;
+		}
+		if (count < SPINS + YIELDS) {
+			Thread.yield();
+			return;
+		}
+		LockSupport.parkNanos(PARK_NANOS);
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * 管道的输入流
+	 */
+	private class PipeInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			int available = awaitReadable();
+			if (available == EOF) {
+				return EOF;
+			}
+			int b = ring[(int) readIndex & mask] & 0xff;
+			consume(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+				throws IOException {
+			return BytePipe.this.read(bytes, offset, length);
+		}
+
+		@Override
+		public int available() {
+			return (int) (tail.get() - readIndex);
+		}
+
+		@Override
+		public void close() {
+			closeInput();
+		}
+
+	}
+
+	/**
+	 * 管道的输出流
+	 */
+	private class PipeOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			awaitWritable();
+			ring[(int) writeIndex & mask] = (byte) b;
+			publish(1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			BytePipe.this.write(bytes, offset, length);
+		}
+
+		@Override
+		public void close() {
+			closeOutput();
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package org.lychie.jutil;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建守护线程, 不阻止 JVM 退出. 线程名为 前缀-序号
+ * 
+ * @author Lychie Fan
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private String prefix;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param prefix
+	 *            线程名前缀
+	 */
+	DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, prefix + "-"
+				+ count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,293 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.io.IOException;
+import java.util.Collections;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchEvent;
+import java.nio.file.LinkOption;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.FileVisitResult;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.lychie.jutil.exception.UnexpectedException;
+
+/**
+ * 目录文件索引. 创建时遍历一次目录树, 之后通过 WatchService 监听文件的创建和删除
+ * (包括新建的子目录)来更新索引, 查询直接从内存返回. 同一组扩展名的查询结果会被缓存,
+ * 直到目录树再次发生变化. 索引的更新由后台线程完成, 与文件系统的变化之间存在短暂的延迟.
+ * 索引关闭或监听失败后不再更新, 此时查询抛出 IllegalStateException
+ * 
+ * @author Lychie Fan
+ */
+public class DirectoryIndex implements Closeable {
+
+	private static final int MAX_CACHED_QUERIES = 64;
+
+	private Path root;
+	private WatchService watcher;
+	private volatile boolean closed;
+	private volatile Throwable failure;
+	private final AtomicLong version = new AtomicLong();
+	private final Map<Path, Boolean> files = new ConcurrentHashMap<Path, Boolean>();
+	private final Map<Path, WatchKey> dirs = new ConcurrentHashMap<Path, WatchKey>();
+	private final Map<String, Snapshot> cache = new ConcurrentHashMap<String, Snapshot>();
+
+	DirectoryIndex(File dir) {
+		this.root = dir.toPath().toAbsolutePath();
+		try {
+			watcher = root.getFileSystem().newWatchService();
+			scan(root);
+		} catch (Throwable e) {
+			close();
+			throw new UnexpectedException(e);
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "jutil-index-" + dir.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 获取索引中含参数指定的文件扩展名的文件列表
+	 * 
+	 * @param extensions
+	 *            文件扩展名, 不传入时返回全部文件
+	 * @return 不可修改的列表
+	 * @throws IllegalStateException
+	 *             索引已关闭或监听失败
+	 */
+	public List<File> list(String... extensions) {
+		ensureOpen();
+		String key = key(extensions);
+		long current = version.get();
+		Snapshot snapshot = cache.get(key);
+		if (snapshot != null && snapshot.version == current) {
+			return snapshot.files;
+		}
+		PathMatcher matcher = FileWalker.extensionMatcher(extensions);
+		List<File> list = new ArrayList<File>();
+		for (Path path : files.keySet()) {
+			if (matcher.matches(path)) {
+				list.add(path.toFile());
+			}
+		}
+		snapshot = new Snapshot(current, Collections.unmodifiableList(list));
+		if (cache.size() >= MAX_CACHED_QUERIES) {
+			cache.clear();
+		}
+		cache.put(key, snapshot);
+		return snapshot.files;
+	}
+
+	/**
+	 * 索引中的文件总数
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 *             索引已关闭或监听失败
+	 */
+	public int size() {
+		ensureOpen();
+		return files.size();
+	}
+
+	/**
+	 * 监听失败时的异常
+	 * 
+	 * @return 未发生异常时返回null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * 停止监听, 可重复调用
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		IOUtil.close(watcher);
+		cache.clear();
+	}
+
+	/**
+	 * 处理目录变化事件, 直到被关闭
+	 */
+	private void watch() {
+		try {
+			while (!closed) {
+				WatchKey key = watcher.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						rebuild();
+						continue;
+					}
+					Path path = dir.resolve((Path) event.context());
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						scan(path);
+					} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+						remove(path);
+					}
+				}
+				if (!key.reset()) {
+					remove(dir);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			/* closed */
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			// 索引已无法保持同步, 关闭后查询将抛出异常, 而不是返回过期的结果
+			failure = e;
+			close();
+		}
+	}
+
+	/**
+	 * 将文件或目录树加入索引, 目录在遍历之前登记监听, 以免遗漏遍历期间新建的文件
+	 * 
+	 * @param start
+	 *            文件或目录
+	 * @throws IOException
+	 */
+	private void scan(Path start) throws IOException {
+		if (!Files.exists(start, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attributes) throws IOException {
+				if (!dirs.containsKey(dir)) {
+					dirs.put(dir, dir.register(watcher,
+							StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_DELETE));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attributes) {
+				if (attributes.isRegularFile() || Files.isRegularFile(file)) {
+					add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * 从索引中移除文件或目录树
+	 * 
+	 * @param path
+	 *            文件或目录
+	 */
+	private void remove(Path path) {
+		if (files.remove(path) != null) {
+			version.incrementAndGet();
+			return;
+		}
+		boolean changed = false;
+		Iterator<Map.Entry<Path, WatchKey>> keys = dirs.entrySet().iterator();
+		while (keys.hasNext()) {
+			Map.Entry<Path, WatchKey> entry = keys.next();
+			if (entry.getKey().startsWith(path)) {
+				entry.getValue().cancel();
+				keys.remove();
+				changed = true;
+			}
+		}
+		if (changed) {
+			Iterator<Path> iterator = files.keySet().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().startsWith(path)) {
+					iterator.remove();
+				}
+			}
+			version.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 事件溢出时重建整个索引, 取消原有的监听后重新遍历并登记
+	 * 
+	 * @throws IOException
+	 */
+	private void rebuild() throws IOException {
+		for (WatchKey key : dirs.values()) {
+			key.cancel();
+		}
+		dirs.clear();
+		files.clear();
+		cache.clear();
+		scan(root);
+		version.incrementAndGet();
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("index is closed", failure);
+		}
+	}
+
+	private void add(Path file) {
+		if (files.put(file, Boolean.TRUE) == null) {
+			version.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 缓存的键, 排序后的扩展名逐个以 长度:扩展名 的形式拼接, 不会产生歧义
+	 */
+	private static String key(String[] extensions) {
+		String[] sorted = extensions.clone();
+		Arrays.sort(sorted);
+		StringBuilder builder = new StringBuilder();
+		for (String extension : sorted) {
+			builder.append(extension.length()).append(':').append(extension);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 某一版本索引下的查询结果
+	 */
+	private static class Snapshot {
+
+		private long version;
+		private List<File> files;
+
+		public Snapshot(long version, List<File> files) {
+			this.version = version;
+			this.files = files;
+		}
+
+	}
+
+}
\ No newline at end of file
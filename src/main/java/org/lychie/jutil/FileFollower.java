@@ -0,0 +1,263 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.WatchKey;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.lychie.jutil.exception.UnexpectedException;
+
+/**
+ * 跟踪不断增长的文件(如日志文件), 只读取新追加的内容并逐行通知. 与 FileUtil.tail 一致,
+ * \n, \r\n 和单独的 \r 都视为换行. 使用 WatchService 在文件变化时唤醒, 并能识别文件被截断
+ * 或被轮转(重新创建)的情况. 行处理器抛出异常时停止跟踪, 异常可以通过 getFailure 获取
+ * 
+ * @author Lychie Fan
+ */
+public class FileFollower implements Closeable {
+
+	private static final int EOF = -1;
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final long POLL_MILLIS = 1000;
+
+	private File file;
+	private Path path;
+	private Charset charset;
+	private LineHandler handler;
+	private Object fileKey;
+	private FileChannel channel;
+	private WatchService watcher;
+	private volatile long position;
+	private volatile boolean closed;
+	private volatile Throwable failure;
+	private boolean afterCR;
+	private ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+	/**
+	 * 行处理器
+	 */
+	public interface LineHandler {
+
+		/**
+		 * 处理新追加的一行内容, 不包含换行符
+		 * 
+		 * @param line
+		 *            行内容
+		 */
+		void handle(String line);
+
+	}
+
+	FileFollower(File file, String charset, LineHandler handler,
+			boolean fromEnd) {
+		this.file = file;
+		this.path = file.toPath().toAbsolutePath();
+		this.handler = handler;
+		try {
+			this.charset = Charset.forName(charset);
+			watcher = path.getFileSystem().newWatchService();
+			path.getParent().register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			if (open() && fromEnd) {
+				position = channel.size();
+			}
+		} catch (Throwable e) {
+			close();
+			throw new UnexpectedException(e);
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				follow();
+			}
+		}, "jutil-follow-" + file.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 已读取到的文件位置
+	 * 
+	 * @return
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * 跟踪因异常而停止时的异常, 如行处理器抛出的异常
+	 * 
+	 * @return 未发生异常时返回null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * 停止跟踪, 可重复调用
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		IOUtil.close(watcher);
+	}
+
+	/**
+	 * 等待文件变化并读取新追加的内容, 直到被关闭
+	 */
+	private void follow() {
+		try {
+			while (!closed) {
+				try {
+					poll();
+				} catch (IOException e) {
+					/* 文件可能正在被轮转, 下次唤醒时重试 */
+				}
+				// 积压的事件合并为一次读取, 超时后也检查一次, 以防事件丢失
+				WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				while (key != null) {
+					key.pollEvents();
+					key.reset();
+					key = watcher.poll();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			/* closed */
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			// 行处理器失败时已读过的位置无法回退, 停止跟踪并保留异常
+			failure = e;
+			close();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * 读取新追加的内容, 处理截断和轮转
+	 * 
+	 * @throws IOException
+	 */
+	private void poll() throws IOException {
+		if (channel == null && !open()) {
+			return;
+		}
+		Object key = currentFileKey();
+		if (key != null && !key.equals(fileKey)) {
+			// 文件被轮转: 读完旧文件剩余的内容, 没有换行符结尾的最后一行也一并通知,
+			// 再从头读取新文件
+			read();
+			if (partial.size() > 0) {
+				flush();
+			}
+			release();
+			if (!open()) {
+				return;
+			}
+		}
+		if (channel.size() < position) {
+			// 文件被截断
+			position = 0;
+			partial.reset();
+			afterCR = false;
+		}
+		read();
+	}
+
+	/**
+	 * 从当前位置读到文件末尾
+	 * 
+	 * @throws IOException
+	 */
+	private void read() throws IOException {
+		BufferPool pool = BufferPool.getDefault();
+		byte[] bytes = pool.acquire();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int read;
+			while (!closed && (read = channel.read(buffer, position)) != EOF
+					&& read > 0) {
+				position += read;
+				emit(bytes, read);
+				buffer.clear();
+			}
+		} finally {
+			pool.release(bytes);
+		}
+	}
+
+	/**
+	 * 按换行符切分并通知完整的行, 不完整的行留待下次读取. \r 立即结束一行,
+	 * 紧随其后的 \n(可能在下一次读取中)被跳过
+	 */
+	private void emit(byte[] bytes, int length) {
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = bytes[i];
+			if (b == LF && afterCR) {
+				afterCR = false;
+				start = i + 1;
+				continue;
+			}
+			afterCR = b == CR;
+			if (b == LF || b == CR) {
+				partial.write(bytes, start, i - start);
+				flush();
+				start = i + 1;
+			}
+		}
+		partial.write(bytes, start, length - start);
+	}
+
+	/**
+	 * 通知已缓存的一行
+	 */
+	private void flush() {
+		String line = new String(partial.toByteArray(), charset);
+		partial.reset();
+		handler.handle(line);
+	}
+
+	private boolean open() throws IOException {
+		if (!Files.exists(path)) {
+			return false;
+		}
+		FileInputStream in = new FileInputStream(file);
+		channel = in.getChannel();
+		fileKey = currentFileKey();
+		position = 0;
+		partial.reset();
+		afterCR = false;
+		return true;
+	}
+
+	private void release() {
+		IOUtil.close(channel);
+		channel = null;
+	}
+
+	private Object currentFileKey() {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class)
+					.fileKey();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+package org.lychie.jutil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件操作报告, 统计处理的文件数, 字节数及耗时
+ * 
+ * @author Lychie Fan
+ */
+public class FileReport {
+
+	private static final long NANOS_PER_MILLI = 1000 * 1000;
+	private static final double NANOS_PER_SECOND = 1000 * 1000 * 1000D;
+
+	private final long startTime;
+	private volatile long endTime;
+	private final AtomicLong files = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong skippedFiles = new AtomicLong();
+	private final AtomicLong skippedBytes = new AtomicLong();
+	private final AtomicLong deletedFiles = new AtomicLong();
+	private final AtomicLong deletedBytes = new AtomicLong();
+
+	FileReport() {
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * 处理的文件数
+	 * 
+	 * @return
+	 */
+	public long getFiles() {
+		return files.get();
+	}
+
+	/**
+	 * 处理的字节数
+	 * 
+	 * @return
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * 未发生变化而跳过的文件数
+	 * 
+	 * @return
+	 */
+	public long getSkippedFiles() {
+		return skippedFiles.get();
+	}
+
+	/**
+	 * 未发生变化而跳过的字节数, 即节省的拷贝量
+	 * 
+	 * @return
+	 */
+	public long getSkippedBytes() {
+		return skippedBytes.get();
+	}
+
+	/**
+	 * 删除的文件数
+	 * 
+	 * @return
+	 */
+	public long getDeletedFiles() {
+		return deletedFiles.get();
+	}
+
+	/**
+	 * 删除的字节数
+	 * 
+	 * @return
+	 */
+	public long getDeletedBytes() {
+		return deletedBytes.get();
+	}
+
+	/**
+	 * 耗时(毫秒)
+	 * 
+	 * @return
+	 */
+	public long getElapsedMillis() {
+		return getElapsedNanos() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * 每秒处理的文件数
+	 * 
+	 * @return
+	 */
+	public double getFilesPerSecond() {
+		return perSecond(getFiles());
+	}
+
+	/**
+	 * 每秒处理的字节数
+	 * 
+	 * @return
+	 */
+	public double getBytesPerSecond() {
+		return perSecond(getBytes());
+	}
+
+	@Override
+	public String toString() {
+		String text = String.format("%d files, %d bytes in %d ms"
+				+ " (%.1f files/s, %.1f bytes/s)", getFiles(), getBytes(),
+				getElapsedMillis(), getFilesPerSecond(), getBytesPerSecond());
+		if (getSkippedFiles() > 0) {
+			text += String.format(", skipped %d files, %d bytes",
+					getSkippedFiles(), getSkippedBytes());
+		}
+		if (getDeletedFiles() > 0) {
+			text += String.format(", deleted %d files, %d bytes",
+					getDeletedFiles(), getDeletedBytes());
+		}
+		return text;
+	}
+
+	/**
+	 * 记录一个已处理的文件
+	 * 
+	 * @param length
+	 *            文件字节数
+	 */
+	void add(long length) {
+		files.incrementAndGet();
+		bytes.addAndGet(length);
+	}
+
+	/**
+	 * 记录一个未发生变化而跳过的文件
+	 * 
+	 * @param length
+	 *            文件字节数
+	 */
+	void skip(long length) {
+		skippedFiles.incrementAndGet();
+		skippedBytes.addAndGet(length);
+	}
+
+	/**
+	 * 记录删除的文件
+	 * 
+	 * @param report
+	 *            删除报告
+	 */
+	void deleted(FileReport report) {
+		deletedFiles.addAndGet(report.getFiles());
+		deletedBytes.addAndGet(report.getBytes());
+	}
+
+	/**
+	 * 结束计时
+	 */
+	void finish() {
+		endTime = System.nanoTime();
+	}
+
+	private long getElapsedNanos() {
+		long end = endTime;
+		return (end == 0 ? System.nanoTime() : end) - startTime;
+	}
+
+	private double perSecond(long count) {
+		long elapsed = getElapsedNanos();
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return count * NANOS_PER_SECOND / elapsed;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Comparator;
+import java.io.FileInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * 在文件的原始字节中搜索字符串. 所有模式编译为一个 Aho-Corasick 自动机,
+ * 每个窗口只扫描一遍, 同时找出所有模式的匹配并统计换行符. 文件按窗口分段映射到内存,
+ * 相邻窗口重叠最长模式的长度减一个字节, 因此可以搜索超过2G的文件,
+ * 且不会遗漏跨越窗口边界的匹配
+ * 
+ * @author Lychie Fan
+ */
+class FileSearcher {
+
+	private static final byte LF = '\n';
+	private static final int ALPHABET = 256;
+	private static final int CHUNK_SIZE = 1024 * 64;
+	private static final long WINDOW_SIZE = 1024 * 1024 * 64;
+
+	private String[] patterns;
+	/* 每个模式的字节数及其中的换行符个数 */
+	private int[] lengths;
+	private int[] breaks;
+	/* 状态转移表, 状态 s 读入字节 b 后转到 delta[s * 256 + b] */
+	private int[] delta;
+	/* 到达每个状态时匹配的模式下标 */
+	private int[][] outputs;
+	private int overlap;
+
+	/**
+	 * @param patterns
+	 *            搜索的字符串
+	 * @param charset
+	 *            字符串编码为字节时使用的字符集编码
+	 */
+	FileSearcher(String[] patterns, String charset) {
+		if (patterns.length == 0) {
+			throw new IllegalArgumentException("patterns can not be empty");
+		}
+		this.patterns = patterns;
+		this.lengths = new int[patterns.length];
+		this.breaks = new int[patterns.length];
+		byte[][] bytes = new byte[patterns.length][];
+		try {
+			for (int i = 0; i < patterns.length; i++) {
+				bytes[i] = patterns[i].getBytes(charset);
+				if (bytes[i].length == 0) {
+					throw new IllegalArgumentException(
+							"pattern can not be empty");
+				}
+				lengths[i] = bytes[i].length;
+				for (byte b : bytes[i]) {
+					if (b == LF) {
+						breaks[i]++;
+					}
+				}
+				overlap = Math.max(overlap, bytes[i].length - 1);
+			}
+		} catch (IllegalArgumentException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalArgumentException(e);
+		}
+		compile(bytes);
+	}
+
+	/**
+	 * 搜索文件
+	 * 
+	 * @param file
+	 *            文件
+	 * @return 按偏移量排序的匹配结果
+	 * @throws IOException
+	 */
+	List<SearchMatch> search(File file) throws IOException {
+		List<SearchMatch> matches = new ArrayList<SearchMatch>();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			long lines = 1;
+			byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE,
+					Math.max(size, 1))];
+			for (long start = 0; start < size; start += WINDOW_SIZE) {
+				int length = (int) Math.min(WINDOW_SIZE, size - start);
+				int mapped = (int) Math.min(length + overlap, size - start);
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start,
+						mapped);
+				lines = search(buffer, chunk, start, length, mapped, lines,
+						matches);
+			}
+		} finally {
+			IOUtil.close(in);
+		}
+		return matches;
+	}
+
+	/**
+	 * 扫描一个窗口, 只记录起始位置落在窗口自身范围(不含重叠部分)内的匹配
+	 * 
+	 * @return 窗口结束处的行号
+	 */
+	private long search(MappedByteBuffer buffer, byte[] chunk, long start,
+			int length, int mapped, long lines, List<SearchMatch> matches) {
+		List<long[]> found = new ArrayList<long[]>();
+		int state = 0;
+		for (int base = 0; base < mapped; base += chunk.length) {
+			int n = Math.min(chunk.length, mapped - base);
+			buffer.get(chunk, 0, n);
+			for (int k = 0; k < n; k++) {
+				byte b = chunk[k];
+				state = delta[state * ALPHABET + (b & 0xff)];
+				if (b == LF) {
+					lines++;
+				}
+				int[] hits = outputs[state];
+				if (hits == null) {
+					continue;
+				}
+				for (int p : hits) {
+					int offset = base + k - lengths[p] + 1;
+					if (offset < length) {
+						// 匹配起始处的行号: 减去模式自身包含的换行符
+						found.add(new long[] { offset, p, lines - breaks[p] });
+					}
+				}
+			}
+		}
+		// 重叠部分的换行符由下一个窗口统计
+		for (int i = length; i < mapped; i++) {
+			if (buffer.get(i) == LF) {
+				lines--;
+			}
+		}
+		if (found.size() > 1) {
+			long[][] sorted = found.toArray(new long[found.size()][]);
+			Arrays.sort(sorted, new Comparator<long[]>() {
+				@Override
+				public int compare(long[] a, long[] b) {
+					if (a[0] != b[0]) {
+						return a[0] < b[0] ? -1 : 1;
+					}
+					return a[1] < b[1] ? -1 : a[1] == b[1] ? 0 : 1;
+				}
+			});
+			found = Arrays.asList(sorted);
+		}
+		for (long[] item : found) {
+			matches.add(new SearchMatch(patterns[(int) item[1]], start
+					+ item[0], item[2]));
+		}
+		return lines;
+	}
+
+	/**
+	 * 构建 Aho-Corasick 自动机: 先由所有模式建立字典树, 再按广度优先计算失败转移,
+	 * 并把失败转移合并进完整的状态转移表, 扫描时每个字节只需查一次表
+	 */
+	private void compile(byte[][] bytes) {
+		List<int[]> trie = new ArrayList<int[]>();
+		List<int[]> out = new ArrayList<int[]>();
+		trie.add(node());
+		out.add(null);
+		for (int p = 0; p < bytes.length; p++) {
+			int state = 0;
+			for (byte b : bytes[p]) {
+				int c = b & 0xff;
+				int next = trie.get(state)[c];
+				if (next < 0) {
+					next = trie.size();
+					trie.add(node());
+					out.add(null);
+					trie.get(state)[c] = next;
+				}
+				state = next;
+			}
+			out.set(state, append(out.get(state), new int[] { p }));
+		}
+		int count = trie.size();
+		delta = new int[count * ALPHABET];
+		outputs = out.toArray(new int[count][]);
+		int[] fail = new int[count];
+		int[] queue = new int[count];
+		int head = 0, tail = 0;
+		for (int c = 0; c < ALPHABET; c++) {
+			int next = trie.get(0)[c];
+			if (next > 0) {
+				delta[c] = next;
+				queue[tail++] = next;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			outputs[state] = append(outputs[state], outputs[fail[state]]);
+			int[] children = trie.get(state);
+			for (int c = 0; c < ALPHABET; c++) {
+				int fallback = delta[fail[state] * ALPHABET + c];
+				int next = children[c];
+				if (next < 0) {
+					delta[state * ALPHABET + c] = fallback;
+				} else {
+					delta[state * ALPHABET + c] = next;
+					fail[next] = fallback;
+					queue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	private static int[] node() {
+		int[] children = new int[ALPHABET];
+		Arrays.fill(children, -1);
+		return children;
+	}
+
+	private static int[] append(int[] a, int[] b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		int[] merged = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, merged, a.length, b.length);
+		return merged;
+	}
+
+}
\ No newline at end of file
@@ -1,24 +1,51 @@
 package org.lychie.jutil;
 
 import java.io.File;
+import java.util.Map;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.List;
-import java.io.FileReader;
+import java.util.Deque;
+import java.nio.file.Path;
 import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.io.OutputStream;
+import java.util.Collection;
 import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FilenameFilter;
+import java.util.LinkedHashMap;
 import java.io.FileInputStream;
-import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.file.LinkOption;
 import java.io.FileOutputStream;
+import java.nio.file.PathMatcher;
+import java.nio.MappedByteBuffer;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.security.MessageDigest;
+import java.util.concurrent.Future;
+import java.nio.file.DirectoryStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.io.FileNotFoundException;
+import java.nio.channels.FileChannel;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.nio.file.NoSuchFileException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ExecutorService;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorCompletionService;
 import org.lychie.jutil.exception.FileCastException;
 import org.lychie.jutil.exception.UnexpectedException;
 
@@ -32,7 +59,22 @@ public class FileUtil {
 	private static final int EOF = -1;
 	private static final int INDEX_NOT_FOUND = -1;
 	private static final int BUFFER_SIZE = 1024 * 1024 / 2;
+	private static final int SCAN_SIZE = 1024 * 64;
+	private static final long SEGMENT_SIZE = 1024 * 1024 * 64;
+	private static final long TRANSFER_SIZE = 1024 * 1024 * 64;
+	private static final int THROTTLE_SIZE = 1024 * 64;
+	private static final int CHAR_BUFFER_SIZE = 1024 * 8;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final String CRLF = "\r\n";
 	private static final String DEFAULT_CHARSET = "UTF-8";
+	private static final String MANIFEST_SUFFIX = ".manifest";
+	private static final String MANIFEST_NAME = "name";
+	private static final String MANIFEST_SIZE = "size";
+
+	private static volatile IOMetrics metrics = Boolean
+			.getBoolean("jutil.metrics") ? IOMetrics.get("FileUtil") : null;
 
 	/**
 	 * 写出
@@ -43,11 +85,15 @@ public class FileUtil {
 	 *            输出流
 	 */
 	public static void write(File src, OutputStream out) {
+		ResourceScope scope = IOUtil.openScope();
 		try {
-			InputStream in = new FileInputStream(src);
+			scope.register(out);
+			InputStream in = scope.register(new FileInputStream(src));
 			write(in, out, BUFFER_SIZE);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
+		} finally {
+			scope.close();
 		}
 	}
 
@@ -60,11 +106,15 @@ public class FileUtil {
 	 *            目标文件
 	 */
 	public static void write(InputStream in, File dest) {
+		ResourceScope scope = IOUtil.openScope();
 		try {
-			OutputStream out = new FileOutputStream(dest);
+			scope.register(in);
+			OutputStream out = scope.register(new FileOutputStream(dest));
 			write(in, out, BUFFER_SIZE);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
+		} finally {
+			scope.close();
 		}
 	}
 
@@ -91,11 +141,82 @@ public class FileUtil {
 	 *            缓冲字节数大小
 	 */
 	public static void write(InputStream in, OutputStream out, int bufferSize) {
+		write(in, out, bufferSize, null);
+	}
+
+	/**
+	 * 限速写出, 多个写出共用同一个限速器时限制的是它们的总带宽
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param out
+	 *            输出流
+	 * @param limiter
+	 *            限速器, 为null时不限速
+	 */
+	public static void write(InputStream in, OutputStream out,
+			RateLimiter limiter) {
+		write(in, out, BUFFER_SIZE, limiter);
+	}
+
+	/**
+	 * 写出, 文件之间的写出由通道直接传输, 限速时按块获取许可,
+	 * 内存缓冲区的快速路径一次写完无法限速, 只在不限速时使用
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param out
+	 *            输出流
+	 * @param bufferSize
+	 *            缓冲字节数大小
+	 * @param limiter
+	 *            限速器, 为null时不限速
+	 */
+	private static void write(InputStream in, OutputStream out,
+			int bufferSize, RateLimiter limiter) {
+		IOMetrics metrics = FileUtil.metrics;
 		try {
-			int read;
-			byte[] buffer = new byte[bufferSize];
-			while ((read = in.read(buffer)) != EOF) {
-				out.write(buffer, 0, read);
+			if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+				FileChannel inChannel = ((FileInputStream) in).getChannel();
+				FileChannel outChannel = ((FileOutputStream) out).getChannel();
+				if (transfer(inChannel, outChannel, limiter, metrics)) {
+					return;
+				}
+			}
+			long start = System.nanoTime();
+			if (limiter == null && in instanceof ByteBufferInputStream) {
+				ByteBuffer buffer = ((ByteBufferInputStream) in).getBuffer();
+				int remaining = buffer.remaining();
+				if (writeBuffer(buffer, out)) {
+					record(metrics, remaining, System.nanoTime() - start);
+					return;
+				}
+			} else if (limiter == null && in instanceof FileInputStream
+					&& out instanceof ByteBufferOutputStream) {
+				FileChannel inChannel = ((FileInputStream) in).getChannel();
+				long read = ((ByteBufferOutputStream) out).transferFrom(inChannel);
+				record(metrics, read, System.nanoTime() - start);
+				return;
+			}
+			if (metrics != null) {
+				in = IOUtil.instrument(in, metrics);
+				out = IOUtil.instrument(out, metrics);
+			}
+			if (limiter != null) {
+				out = IOUtil.throttle(out, limiter);
+			}
+			BufferPool pool = BufferPool.getDefault();
+			boolean pooled = bufferSize <= pool.getBufferSize();
+			byte[] buffer = pooled ? pool.acquire() : new byte[bufferSize];
+			try {
+				int read;
+				while ((read = in.read(buffer, 0, bufferSize)) != EOF) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				if (pooled) {
+					pool.release(buffer);
+				}
 			}
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
@@ -104,6 +225,92 @@ public class FileUtil {
 		}
 	}
 
+	/**
+	 * 压缩文件为 gzip 格式, 输入被切分成独立的块由多个线程并行压缩
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param dest
+	 *            目标文件
+	 * @see #compress(InputStream, OutputStream, int)
+	 */
+	public static void compress(File src, File dest) {
+		ResourceScope scope = IOUtil.openScope();
+		try {
+			InputStream in = scope.register(new FileInputStream(src));
+			OutputStream out = scope.register(new FileOutputStream(dest));
+			int processors = Runtime.getRuntime().availableProcessors();
+			compress(in, out, processors);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * 压缩为 gzip 格式, 输入被切分成独立的块由多个线程并行压缩, 输出为标准的多成员 gzip 格式,
+	 * 任何 gzip 工具都可以解压. 输入流和输出流在写出完毕后被关闭
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param out
+	 *            输出流
+	 * @param parallelism
+	 *            并行压缩的线程数
+	 */
+	public static void compress(InputStream in, OutputStream out,
+			int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		write(in, new ParallelGZIPOutputStream(out, parallelism), BUFFER_SIZE);
+	}
+
+	/**
+	 * 解压 gzip 格式的文件, 由 compress 压缩的文件被并行解压
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param dest
+	 *            目标文件
+	 * @see #decompress(InputStream, OutputStream, int)
+	 */
+	public static void decompress(File src, File dest) {
+		ResourceScope scope = IOUtil.openScope();
+		try {
+			InputStream in = scope.register(new FileInputStream(src));
+			OutputStream out = scope.register(new FileOutputStream(dest));
+			int processors = Runtime.getRuntime().availableProcessors();
+			decompress(in, out, processors);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * 解压 gzip 格式的内容. 由 compress 压缩的内容被切分成块由多个线程并行解压,
+	 * 其他工具压缩的内容按顺序解压. 输入流和输出流在写出完毕后被关闭
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param out
+	 *            输出流
+	 * @param parallelism
+	 *            并行解压的线程数
+	 */
+	public static void decompress(InputStream in, OutputStream out,
+			int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		write(new ParallelGZIPInputStream(in, parallelism), out, BUFFER_SIZE);
+	}
+
 	/**
 	 * 写出文本内容
 	 * 
@@ -135,18 +342,92 @@ public class FileUtil {
 	}
 
 	/**
-	 * 读取文件内容, 使用UTF-8字符集编码
+	 * 原子地写出内容到文件: 先写入同一目录下的临时文件并刷到磁盘, 再重命名为目标文件.
+	 * 任何时刻崩溃, 目标文件要么是旧的内容, 要么是完整的新内容
 	 * 
+	 * @param data
+	 *            写出的内容
 	 * @param file
-	 *            文件
-	 * @return
+	 *            目标文件, 已存在时被替换
+	 * @see #groupCommit(long)
 	 */
-	public static String readAsString(File file) {
+	public static void writeAtomic(byte[] data, File file) {
+		try {
+			Path temp = GroupCommitWriter.stage(data, file, true);
+			Path target = file.toPath().toAbsolutePath();
+			try {
+				GroupCommitWriter.move(temp, target);
+			} catch (IOException e) {
+				GroupCommitWriter.deleteQuietly(temp);
+				throw e;
+			}
+			GroupCommitWriter.forceDirectory(target.getParent());
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+	}
+
+	/**
+	 * 原子地写出文本内容到文件, 使用UTF-8字符集编码
+	 * 
+	 * @param text
+	 *            文本内容
+	 * @param file
+	 *            目标文件, 已存在时被替换
+	 * @see #writeAtomic(byte[], File)
+	 */
+	public static void writeAtomic(String text, File file) {
+		writeAtomic(text, file, DEFAULT_CHARSET);
+	}
+
+	/**
+	 * 原子地写出文本内容到文件
+	 * 
+	 * @param text
+	 *            文本内容
+	 * @param file
+	 *            目标文件, 已存在时被替换
+	 * @param charset
+	 *            字符集编码
+	 * @see #writeAtomic(byte[], File)
+	 */
+	public static void writeAtomic(String text, File file, String charset) {
+		byte[] data;
 		try {
-			return readAsString(new FileInputStream(file), DEFAULT_CHARSET);
+			data = text.getBytes(charset);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
 		}
+		writeAtomic(data, file);
+	}
+
+	/**
+	 * 创建批量提交的原子写出器. 写出在等待不超过参数指定的时间后与其他待提交的写出一起刷盘,
+	 * 适用于需要持久化大量小文件的场景. 使用完毕后需关闭
+	 * 
+	 * @param maxLatencyMillis
+	 *            一次写出等待提交的最长时间(毫秒)
+	 * @return
+	 * @see #writeAtomic(byte[], File)
+	 */
+	public static GroupCommitWriter groupCommit(long maxLatencyMillis) {
+		if (maxLatencyMillis < 0) {
+			throw new IllegalArgumentException(
+					"maxLatencyMillis must not be negative");
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		return new GroupCommitWriter(maxLatencyMillis, processors);
+	}
+
+	/**
+	 * 读取文件内容, 使用UTF-8字符集编码
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 */
+	public static String readAsString(File file) {
+		return readAsString(file, DEFAULT_CHARSET);
 	}
 
 	/**
@@ -159,8 +440,25 @@ public class FileUtil {
 	 * @return
 	 */
 	public static String readAsString(File file, String charset) {
+		return readAsString(file, charset, false);
+	}
+
+	/**
+	 * 读取文件内容. 按文件大小一次读入全部字节后解码, 不再逐行拆分
+	 * 
+	 * @param file
+	 *            文件
+	 * @param charset
+	 *            使用的字符集编码
+	 * @param preserve
+	 *            是否保留原有的换行符. 若为false, 换行符统一为\r\n, 且去掉末尾的换行符
+	 * @return
+	 */
+	public static String readAsString(File file, String charset,
+			boolean preserve) {
 		try {
-			return readAsString(new FileInputStream(file), charset);
+			String text = new String(readBytes(file), charset);
+			return preserve ? text : normalizeLineSeparators(text);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
 		}
@@ -187,13 +485,133 @@ public class FileUtil {
 	 * @return
 	 */
 	public static String readAsString(InputStream in, String charset) {
+		return readAsString(in, charset, false);
+	}
+
+	/**
+	 * 读取输入流内容
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param charset
+	 *            使用的字符集编码
+	 * @param preserve
+	 *            是否保留原有的换行符. 若为false, 换行符统一为\r\n, 且去掉末尾的换行符
+	 * @return
+	 */
+	public static String readAsString(InputStream in, String charset,
+			boolean preserve) {
 		try {
-			return readAsString(new InputStreamReader(in, charset));
+			String text = readAsString(new InputStreamReader(in, charset));
+			return preserve ? text : normalizeLineSeparators(text);
 		} catch (Throwable e) {
+			IOUtil.close(in);
 			throw new UnexpectedException(e);
 		}
 	}
 
+	/**
+	 * 异步读取文件的全部内容, 不阻塞调用方线程
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 */
+	public static Future<byte[]> readAsync(File file) {
+		return readAsync(file, null);
+	}
+
+	/**
+	 * 异步读取文件的全部内容, 不阻塞调用方线程
+	 * 
+	 * @param file
+	 *            文件
+	 * @param handler
+	 *            完成时的回调, 附件为该文件, 可为null
+	 * @return
+	 */
+	public static Future<byte[]> readAsync(File file,
+			CompletionHandler<byte[], File> handler) {
+		return AsyncFileIO.read(file, handler);
+	}
+
+	/**
+	 * 异步写出内容到文件, 文件已存在时被覆盖
+	 * 
+	 * @param data
+	 *            写出的内容
+	 * @param file
+	 *            目标文件
+	 * @return 写出的字节数
+	 */
+	public static Future<Long> writeAsync(byte[] data, File file) {
+		return writeAsync(data, file, null);
+	}
+
+	/**
+	 * 异步写出内容到文件, 文件已存在时被覆盖
+	 * 
+	 * @param data
+	 *            写出的内容
+	 * @param file
+	 *            目标文件
+	 * @param handler
+	 *            完成时的回调, 附件为该文件, 可为null
+	 * @return 写出的字节数
+	 */
+	public static Future<Long> writeAsync(byte[] data, File file,
+			CompletionHandler<Long, File> handler) {
+		return AsyncFileIO.write(ByteBuffer.wrap(data), file, 0, true, handler);
+	}
+
+	/**
+	 * 异步写出内容到文件的指定位置, 不清空文件原有的内容. 可用于多个分块同时写入同一个文件
+	 * 
+	 * @param data
+	 *            写出的内容, 从其当前位置写到上限
+	 * @param file
+	 *            目标文件
+	 * @param position
+	 *            写入的起始位置
+	 * @param handler
+	 *            完成时的回调, 附件为该文件, 可为null
+	 * @return 写出的字节数
+	 */
+	public static Future<Long> writeAsync(ByteBuffer data, File file,
+			long position, CompletionHandler<Long, File> handler) {
+		return AsyncFileIO.write(data, file, position, false, handler);
+	}
+
+	/**
+	 * 异步拷贝文件内容到另一个文件. 与 copy 不同, dest 是目标文件而不是目标目录
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param dest
+	 *            目标文件, 已存在时被覆盖
+	 * @return 拷贝的字节数
+	 * @see #copy(File, File)
+	 */
+	public static Future<Long> copyFileAsync(File src, File dest) {
+		return copyFileAsync(src, dest, null);
+	}
+
+	/**
+	 * 异步拷贝文件内容到另一个文件. 与 copy 不同, dest 是目标文件而不是目标目录
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param dest
+	 *            目标文件, 已存在时被覆盖
+	 * @param handler
+	 *            完成时的回调, 附件为目标文件, 可为null
+	 * @return 拷贝的字节数
+	 */
+	public static Future<Long> copyFileAsync(File src, File dest,
+			CompletionHandler<Long, File> handler) {
+		return AsyncFileIO.copy(src, dest, handler);
+	}
+
 	/**
 	 * 逐行读取整个文件内容, 使用UTF-8字符集编码
 	 * 
@@ -255,82 +673,444 @@ public class FileUtil {
 	}
 
 	/**
-	 * 获取文件总行数
+	 * 逐行迭代文件内容, 使用UTF-8字符集编码. 内容按需读取, 不会一次性载入内存,
+	 * 迭代完毕或调用 close 时关闭文件
 	 * 
 	 * @param file
 	 *            文件
 	 * @return
 	 */
-	public static int getLineNumber(File file) {
-		LineNumberReader reader = null;
+	public static LineIterator lines(File file) {
+		return lines(file, DEFAULT_CHARSET);
+	}
+
+	/**
+	 * 逐行迭代文件内容. 内容按需读取, 不会一次性载入内存, 迭代完毕或调用 close 时关闭文件
+	 * 
+	 * @param file
+	 *            文件
+	 * @param charset
+	 *            使用的字符集编码
+	 * @return
+	 */
+	public static LineIterator lines(File file, String charset) {
 		try {
-			reader = new LineNumberReader(new FileReader(file));
-			reader.skip(Long.MAX_VALUE);
-			int lines = reader.getLineNumber() + 1;
-			return lines;
+			return lines(new FileInputStream(file), charset);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
-		} finally {
-			IOUtil.close(reader);
 		}
 	}
 
 	/**
-	 * 获取目录下含参数指定的文件扩展名的文件列表
+	 * 逐行迭代输入流内容, 使用UTF-8字符集编码
 	 * 
-	 * @param dir
-	 *            目录
-	 * @param extensions
-	 *            文件扩展名
+	 * @param in
+	 *            输入流
 	 * @return
 	 */
-	public static List<File> list(File dir, String... extensions) {
-		return list(dir, new ExtensionFilenameFilter(extensions));
+	public static LineIterator lines(InputStream in) {
+		return lines(in, DEFAULT_CHARSET);
 	}
 
 	/**
-	 * 删除目录或文件
+	 * 逐行迭代输入流内容
 	 * 
-	 * @param src
-	 *            文件或目录
+	 * @param in
+	 *            输入流
+	 * @param charset
+	 *            使用的字符集编码
+	 * @return
 	 */
-	public static void delete(File src) {
-		if (!src.exists()) {
-			throw new UnexpectedException(new FileNotFoundException(src
-					+ " file dose not exist"));
-		}
-		if (src.isFile()) {
-			src.delete();
-		} else if (src.isDirectory()) {
-			File[] files = src.listFiles();
-			for (File item : files) {
-				delete(item);
-			}
+	public static LineIterator lines(InputStream in, String charset) {
+		try {
+			return new LineIterator(new InputStreamReader(in, charset));
+		} catch (Throwable e) {
+			IOUtil.close(in);
+			throw new UnexpectedException(e);
 		}
-		src.delete();
 	}
 
 	/**
-	 * 重命名目录名或文件名
+	 * 读取文件末尾的若干行, 使用UTF-8字符集编码. 从文件末尾向前分块查找换行符, 只读取需要的部分
 	 * 
-	 * @param src
-	 *            文件或目录
-	 * @param newName
-	 *            新的名称
+	 * @param file
+	 *            文件
+	 * @param lines
+	 *            行数
 	 * @return
 	 */
-	public static File rename(File src, String newName) {
-		if (!src.exists()) {
-			throw new UnexpectedException(new FileNotFoundException(src
-					+ " file dose not exist"));
-		}
-		String oldName = src.getName();
-		int oldIndex = oldName.lastIndexOf(".");
-		if (oldIndex != INDEX_NOT_FOUND) {
-			int newIndex = newName.lastIndexOf(".");
-			if (newIndex == INDEX_NOT_FOUND) {
-				newName += oldName.substring(oldIndex);
-			}
+	public static String[] tail(File file, int lines) {
+		return tail(file, lines, DEFAULT_CHARSET);
+	}
+
+	/**
+	 * 读取文件末尾的若干行. 从文件末尾向前分块查找换行符, 只读取需要的部分,
+	 * 适用于ASCII兼容的字符集编码(UTF-8, GBK 等)
+	 * 
+	 * @param file
+	 *            文件
+	 * @param lines
+	 *            行数
+	 * @param charset
+	 *            使用的字符集编码
+	 * @return
+	 */
+	public static String[] tail(File file, int lines, String charset) {
+		if (lines < 0) {
+			throw new IllegalArgumentException(
+					"lines must be greater than or equal 0");
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			long start = lines == 0 ? size : tailPosition(channel, size, lines);
+			if (size - start > MAX_ARRAY_SIZE) {
+				throw new FileCastException(file + " tail is too large to read");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) (size - start));
+			while (buffer.hasRemaining()
+					&& channel.read(buffer, start + buffer.position()) != EOF) {
+			}
+			if (buffer.position() == 0) {
+				return new String[0];
+			}
+			String text = new String(buffer.array(), 0, buffer.position(),
+					charset);
+			return read(new StringReader(text));
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			IOUtil.close(in);
+		}
+	}
+
+	/**
+	 * 跟踪文件新追加的内容(类似 tail -f), 使用UTF-8字符集编码. 从文件当前末尾开始,
+	 * 每追加一行通知一次; 文件被截断或被轮转时从头读取
+	 * 
+	 * @param file
+	 *            文件
+	 * @param handler
+	 *            行处理器, 在后台线程中调用
+	 * @return 调用 close 停止跟踪
+	 */
+	public static FileFollower follow(File file,
+			FileFollower.LineHandler handler) {
+		return follow(file, DEFAULT_CHARSET, handler);
+	}
+
+	/**
+	 * 跟踪文件新追加的内容(类似 tail -f). 从文件当前末尾开始, 每追加一行通知一次;
+	 * 文件被截断或被轮转时从头读取
+	 * 
+	 * @param file
+	 *            文件
+	 * @param charset
+	 *            使用的字符集编码
+	 * @param handler
+	 *            行处理器, 在后台线程中调用
+	 * @return 调用 close 停止跟踪
+	 */
+	public static FileFollower follow(File file, String charset,
+			FileFollower.LineHandler handler) {
+		return new FileFollower(file, charset, handler, true);
+	}
+
+	/**
+	 * 获取文件总行数
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 * @see #getLineCount(File)
+	 */
+	public static int getLineNumber(File file) {
+		long lines = getLineCount(file);
+		if (lines > Integer.MAX_VALUE) {
+			throw new FileCastException(file + " has more than "
+					+ Integer.MAX_VALUE + " lines, use getLineCount instead");
+		}
+		return (int) lines;
+	}
+
+	/**
+	 * 获取文件总行数. 按字节统计换行符(\n, \r, \r\n), 适用于ASCII兼容的字符集编码(UTF-8,
+	 * GBK 等). 文件被分段映射到内存, 较大的文件由多个线程并行统计
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 */
+	public static long getLineCount(File file) {
+		FileInputStream in = null;
+		ExecutorService executor = null;
+		try {
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			int segments = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			if (segments <= 1) {
+				return countLines(channel, 0, size, size) + 1;
+			}
+			int processors = Runtime.getRuntime().availableProcessors();
+			executor = Executors.newFixedThreadPool(Math.min(processors,
+					segments));
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for (long start = 0; start < size; start += SEGMENT_SIZE) {
+				long end = Math.min(start + SEGMENT_SIZE, size);
+				futures.add(executor.submit(new CountLinesTask(channel, start,
+						end, size)));
+			}
+			long lines = 1;
+			for (Future<Long> future : futures) {
+				lines += future.get();
+			}
+			return lines;
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			shutdown(executor);
+			IOUtil.close(in);
+		}
+	}
+
+	/**
+	 * 在文件中搜索字符串(UTF-8编码). 直接在映射到内存的原始字节中查找, 不解码文件内容,
+	 * 大于2G的文件按窗口分段映射
+	 * 
+	 * @param file
+	 *            文件
+	 * @param patterns
+	 *            搜索的字符串
+	 * @return 按偏移量排序的匹配结果
+	 */
+	public static List<SearchMatch> search(File file, String... patterns) {
+		FileSearcher searcher = new FileSearcher(patterns, DEFAULT_CHARSET);
+		try {
+			return searcher.search(file);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+	}
+
+	/**
+	 * 在多个文件中并行搜索字符串(UTF-8编码)
+	 * 
+	 * @param files
+	 *            文件
+	 * @param parallelism
+	 *            并行搜索的线程数
+	 * @param patterns
+	 *            搜索的字符串
+	 * @return 文件及其匹配结果, 按参数中文件的顺序排列, 包含没有匹配的文件
+	 * @see #search(File, String...)
+	 */
+	public static Map<File, List<SearchMatch>> search(Collection<File> files,
+			int parallelism, String... patterns) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		FileSearcher searcher = new FileSearcher(patterns, DEFAULT_CHARSET);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			Map<File, Future<List<SearchMatch>>> futures = new LinkedHashMap<File, Future<List<SearchMatch>>>();
+			for (File file : files) {
+				futures.put(file, executor.submit(new SearchTask(searcher, file)));
+			}
+			Map<File, List<SearchMatch>> map = new LinkedHashMap<File, List<SearchMatch>>();
+			for (Map.Entry<File, Future<List<SearchMatch>>> entry : futures
+					.entrySet()) {
+				map.put(entry.getKey(), entry.getValue().get());
+			}
+			return map;
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			shutdown(executor);
+		}
+	}
+
+	/**
+	 * 获取目录下含参数指定的文件扩展名的文件列表. 会进入符号链接指向的目录,
+	 * 但跳过指向当前目录或其上级目录的链接; 不需要跟随链接时使用 walk
+	 * 
+	 * @param dir
+	 *            目录
+	 * @param extensions
+	 *            文件扩展名
+	 * @return
+	 * @see #walk(File, String...)
+	 */
+	public static List<File> list(File dir, String... extensions) {
+		if (dir.isFile()) {
+			throw new FileCastException(dir + " is not a directory");
+		}
+		PathMatcher matcher = FileWalker.extensionMatcher(extensions);
+		return list(new FileWalker(dir.toPath(), matcher, true));
+	}
+
+	/**
+	 * 并行获取目录下含参数指定的文件扩展名的文件列表, 各个一级子目录由多个线程同时遍历.
+	 * 与 list(File, String...) 一样会进入符号链接指向的目录
+	 * 
+	 * @param dir
+	 *            目录
+	 * @param parallelism
+	 *            并行遍历的线程数
+	 * @param extensions
+	 *            文件扩展名
+	 * @return
+	 */
+	public static List<File> list(File dir, int parallelism,
+			String... extensions) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		if (dir.isFile()) {
+			throw new FileCastException(dir + " is not a directory");
+		}
+		PathMatcher matcher = FileWalker.extensionMatcher(extensions);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<File> list = new ArrayList<File>();
+			List<Future<List<File>>> futures = new ArrayList<Future<List<File>>>();
+			Path root = dir.toPath().toRealPath();
+			for (Path child : children(dir.toPath())) {
+				if (Files.isDirectory(child)) {
+					if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)
+							|| !FileWalker.isLoop(root, child)) {
+						futures.add(executor.submit(new ListTask(child, matcher)));
+					}
+				} else if (Files.isRegularFile(child) && matcher.matches(child)) {
+					list.add(child.toFile());
+				}
+			}
+			for (Future<List<File>> future : futures) {
+				list.addAll(future.get());
+			}
+			return list;
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			shutdown(executor);
+		}
+	}
+
+	/**
+	 * 遍历目录下含参数指定的文件扩展名的文件, 文件在迭代时逐个读取, 不会一次性载入整个目录树
+	 * 
+	 * @param dir
+	 *            目录
+	 * @param extensions
+	 *            文件扩展名
+	 * @return
+	 */
+	public static FileWalker walk(File dir, String... extensions) {
+		if (dir.isFile()) {
+			throw new FileCastException(dir + " is not a directory");
+		}
+		PathMatcher matcher = FileWalker.extensionMatcher(extensions);
+		return new FileWalker(dir.toPath(), matcher);
+	}
+
+	/**
+	 * 遍历目录下与 glob 模式匹配的文件. 模式中不含目录分隔符时匹配文件名称(如 *.xml),
+	 * 否则匹配相对于该目录的路径(如 conf/*.json)
+	 * 
+	 * @param dir
+	 *            目录
+	 * @param glob
+	 *            glob 模式
+	 * @return
+	 */
+	public static FileWalker glob(File dir, String glob) {
+		if (dir.isFile()) {
+			throw new FileCastException(dir + " is not a directory");
+		}
+		Path root = dir.toPath();
+		return new FileWalker(root, FileWalker.globMatcher(root, glob));
+	}
+
+	/**
+	 * 为目录建立文件索引. 索引通过 WatchService 随目录树的变化自动更新,
+	 * 适用于需要反复获取同一目录文件列表的场景
+	 * 
+	 * @param dir
+	 *            目录
+	 * @return 调用 close 停止监听
+	 */
+	public static DirectoryIndex index(File dir) {
+		if (!dir.isDirectory()) {
+			throw new FileCastException(dir + " is not a directory");
+		}
+		return new DirectoryIndex(dir);
+	}
+
+	/**
+	 * 删除目录或文件. 符号链接只删除链接本身, 不会进入链接指向的目录
+	 * 
+	 * @param src
+	 *            文件或目录
+	 */
+	public static void delete(File src) {
+		delete(src, 1);
+	}
+
+	/**
+	 * 并行删除目录或文件. 目录树被拆分为多个互不相关的子树, 由多个线程同时删除.
+	 * 符号链接只删除链接本身, 不会进入链接指向的目录
+	 * 
+	 * @param src
+	 *            文件或目录
+	 * @param parallelism
+	 *            并行删除的线程数
+	 * @return 删除的文件数及字节数
+	 */
+	public static FileReport delete(File src, int parallelism) {
+		Path path = src.toPath();
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			throw new UnexpectedException(new FileNotFoundException(src
+					+ " file dose not exist"));
+		}
+		List<Path> roots = new ArrayList<Path>();
+		roots.add(path);
+		return delete(roots, parallelism);
+	}
+
+	/**
+	 * 重命名目录名或文件名
+	 * 
+	 * @param src
+	 *            文件或目录
+	 * @param newName
+	 *            新的名称
+	 * @return
+	 */
+	public static File rename(File src, String newName) {
+		if (!src.exists()) {
+			throw new UnexpectedException(new FileNotFoundException(src
+					+ " file dose not exist"));
+		}
+		String oldName = src.getName();
+		int oldIndex = oldName.lastIndexOf(".");
+		if (oldIndex != INDEX_NOT_FOUND) {
+			int newIndex = newName.lastIndexOf(".");
+			if (newIndex == INDEX_NOT_FOUND) {
+				newName += oldName.substring(oldIndex);
+			}
 		}
 		String pathname = src.toString();
 		pathname = pathname.substring(0, pathname.length() - oldName.length());
@@ -376,12 +1156,26 @@ public class FileUtil {
 	 *            目的目录
 	 */
 	public static void copy(File src, File destDir) {
+		copy(src, destDir, (RateLimiter) null);
+	}
+
+	/**
+	 * 限速拷贝文件或目录, 多个拷贝共用同一个限速器时限制的是它们的总带宽
+	 * 
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 * @param limiter
+	 *            限速器, 为null时不限速
+	 */
+	public static void copy(File src, File destDir, RateLimiter limiter) {
 		List<File> record = new ArrayList<File>();
 		try {
 			if (src.isFile()) {
-				copyFileToDirectory(src, destDir, record);
+				copyFileToDirectory(src, destDir, record, limiter);
 			} else if (src.isDirectory()) {
-				copyDirectorToDirector(src, destDir, record);
+				copyDirectorToDirector(src, destDir, record, limiter);
 			}
 		} catch (Throwable e) {
 			rollback(record);
@@ -390,42 +1184,93 @@ public class FileUtil {
 	}
 
 	/**
-	 * 强行拷贝文件或目录
+	 * 并行拷贝文件或目录, 先创建全部目录, 再使用多个线程同时拷贝文件, 失败时回滚已拷贝的内容
 	 * 
 	 * @param src
 	 *            源文件或目录
 	 * @param destDir
 	 *            目的目录
-	 * @param overwrite
-	 *            存在是否覆盖
+	 * @param parallelism
+	 *            并行拷贝的线程数
+	 * @return 拷贝的文件数, 字节数及速率
 	 */
-	public static void forceCopy(File src, File destDir, boolean overwrite) {
+	public static FileReport copy(File src, File destDir, int parallelism) {
+		return copy(src, destDir, parallelism, null);
+	}
+
+	/**
+	 * 限速并行拷贝文件或目录, 所有线程共用同一个限速器, 总带宽不超过限速器的速率
+	 * 
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 * @param parallelism
+	 *            并行拷贝的线程数
+	 * @param limiter
+	 *            限速器, 为null时不限速
+	 * @return 拷贝的文件数, 字节数及速率
+	 * @see #copy(File, File, int)
+	 */
+	public static FileReport copy(File src, File destDir, int parallelism,
+			RateLimiter limiter) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		FileReport report = new FileReport();
+		List<File> record = Collections.synchronizedList(new ArrayList<File>());
+		ExecutorService executor = null;
 		try {
 			if (src.isFile()) {
-				forceCopyFileToDirectory(src, destDir, overwrite);
+				copyFileToDirectory(src, destDir, record, limiter);
+				report.add(src.length());
 			} else if (src.isDirectory()) {
-				forceCopyDirectorToDirector(src, destDir, overwrite);
+				List<File[]> pairs = new ArrayList<File[]>();
+				prepareDirectorToDirector(src, destDir, record, pairs);
+				executor = Executors.newFixedThreadPool(parallelism);
+				CompletionService<Long> service = new ExecutorCompletionService<Long>(
+						executor);
+				for (File[] pair : pairs) {
+					service.submit(new CopyTask(pair[0], pair[1], record,
+							limiter));
+				}
+				for (int i = 0; i < pairs.size(); i++) {
+					report.add(service.take().get());
+				}
 			}
 		} catch (Throwable e) {
+			shutdown(executor);
+			rollback(record);
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
 			throw new UnexpectedException(e);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
 		}
+		report.finish();
+		return report;
 	}
 
 	/**
-	 * 剪切文件或目录
+	 * 强行拷贝文件或目录
 	 * 
 	 * @param src
 	 *            源文件或目录
 	 * @param destDir
 	 *            目的目录
+	 * @param overwrite
+	 *            存在是否覆盖
 	 */
-	public static void move(File src, File destDir) {
-		copy(src, destDir);
-		delete(src);
+	public static void forceCopy(File src, File destDir, boolean overwrite) {
+		forceCopy(src, destDir, overwrite, null);
 	}
 
 	/**
-	 * 强行剪切文件或目录
+	 * 限速强行拷贝文件或目录
 	 * 
 	 * @param src
 	 *            源文件或目录
@@ -433,33 +1278,327 @@ public class FileUtil {
 	 *            目的目录
 	 * @param overwrite
 	 *            存在是否覆盖
+	 * @param limiter
+	 *            限速器, 为null时不限速
 	 */
-	public static void forceMove(File src, File destDir, boolean overwrite) {
-		forceCopy(src, destDir, overwrite);
-		delete(src);
+	public static void forceCopy(File src, File destDir, boolean overwrite,
+			RateLimiter limiter) {
+		try {
+			if (src.isFile()) {
+				forceCopyFileToDirectory(src, destDir, overwrite, limiter);
+			} else if (src.isDirectory()) {
+				forceCopyDirectorToDirector(src, destDir, overwrite, limiter);
+			}
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
 	}
 
 	/**
-	 * 清空目录
+	 * 同步文件或目录, 只拷贝发生变化的文件. 大小和修改时间都相同的文件视为未变化,
+	 * 拷贝后目的文件的修改时间与源文件保持一致
 	 * 
-	 * @param dir
-	 *            目录
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 * @return 拷贝, 跳过及删除的文件数和字节数
 	 */
-	public static void cleanDirectory(File dir) {
-		if (!dir.exists()) {
+	public static FileReport sync(File src, File destDir) {
+		return sync(src, destDir, false, false);
+	}
+
+	/**
+	 * 同步文件或目录, 只拷贝发生变化的文件, 拷贝后目的文件的修改时间与源文件保持一致
+	 * 
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 * @param checksum
+	 *            是否比较文件内容的MD5值. 若为false, 大小和修改时间都相同的文件视为未变化;
+	 *            若为true, 大小和MD5值都相同的文件视为未变化
+	 * @param delete
+	 *            是否删除源目录中已不存在的文件或目录
+	 * @return 拷贝, 跳过及删除的文件数和字节数
+	 */
+	public static FileReport sync(File src, File destDir, boolean checksum,
+			boolean delete) {
+		if (!src.exists()) {
+			throw new UnexpectedException(new FileNotFoundException(src
+					+ " file dose not exist"));
+		}
+		FileReport report = new FileReport();
+		try {
+			File dest = new File(destDir, src.getName());
+			if (src.isFile()) {
+				syncFile(src, dest, checksum, report);
+			} else if (src.isDirectory()) {
+				syncDirectory(src, dest, checksum, delete, report);
+			}
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+		report.finish();
+		return report;
+	}
+
+	/**
+	 * 剪切文件或目录. 优先在同一文件系统内直接重命名, 跨文件系统时拷贝后删除源文件或目录
+	 * 
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 */
+	public static void move(File src, File destDir) {
+		File dest = new File(destDir, src.getName());
+		if (src.exists() && !dest.exists() && src.renameTo(dest)) {
+			return;
+		}
+		copy(src, destDir);
+		delete(src);
+	}
+
+	/**
+	 * 强行剪切文件或目录. 逐个文件或目录优先直接重命名, 无法重命名(如跨文件系统)时拷贝后删除
+	 * 
+	 * @param src
+	 *            源文件或目录
+	 * @param destDir
+	 *            目的目录
+	 * @param overwrite
+	 *            存在是否覆盖
+	 */
+	public static void forceMove(File src, File destDir, boolean overwrite) {
+		if (!src.exists()) {
+			throw new UnexpectedException(new FileNotFoundException(src
+					+ " file dose not exist"));
+		}
+		try {
+			if (src.isFile()) {
+				forceMoveFileToDirectory(src, destDir, overwrite);
+			} else if (src.isDirectory()) {
+				forceMoveDirectorToDirector(src, destDir, overwrite);
+			}
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+		if (src.exists()) {
+			delete(src);
+		}
+	}
+
+	/**
+	 * 将文件切分为固定大小的部分, 写出到目标目录. 各部分由多个线程使用按位置读写的通道同时写出,
+	 * 同时生成记录各部分 MD5 值的清单文件(文件名称.manifest), 使用 merge 还原
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param chunkSize
+	 *            每部分的字节数
+	 * @param destDir
+	 *            目标目录
+	 * @return 清单文件
+	 * @see #merge(File, File)
+	 */
+	public static File split(File src, long chunkSize, File destDir) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return split(src, chunkSize, destDir, processors);
+	}
+
+	/**
+	 * 将文件切分为固定大小的部分, 写出到目标目录
+	 * 
+	 * @param src
+	 *            源文件
+	 * @param chunkSize
+	 *            每部分的字节数
+	 * @param destDir
+	 *            目标目录
+	 * @param parallelism
+	 *            并行写出的线程数
+	 * @return 清单文件
+	 * @see #split(File, long, File)
+	 */
+	public static File split(File src, long chunkSize, File destDir,
+			int parallelism) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException(
+					"chunkSize must be greater than 0");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		if (!src.isFile()) {
+			throw new FileCastException(src + " is not a file");
+		}
+		if (destDir.isFile()) {
+			throw new FileCastException(destDir + " is not a directory");
+		}
+		destDir.mkdirs();
+		String name = src.getName();
+		List<File> record = Collections.synchronizedList(new ArrayList<File>());
+		FileInputStream in = null;
+		ExecutorService executor = null;
+		boolean success = false;
+		try {
+			in = new FileInputStream(src);
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			long count = size / chunkSize + (size % chunkSize == 0 ? 0 : 1);
+			if (count > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("chunkSize is too small, "
+						+ src + " would be split into " + count + " parts");
+			}
+			int parts = (int) count;
+			int width = Math.max(3, String.valueOf(parts).length());
+			executor = Executors.newFixedThreadPool(Math.max(1,
+					Math.min(parallelism, parts)));
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			List<File> files = new ArrayList<File>();
+			for (int i = 0; i < parts; i++) {
+				long start = i * chunkSize;
+				long length = Math.min(chunkSize, size - start);
+				File part = new File(destDir, String.format("%s.%0" + width
+						+ "d", name, i + 1));
+				files.add(part);
+				futures.add(executor.submit(new SplitTask(channel, start,
+						length, part, record)));
+			}
+			StringBuilder manifest = new StringBuilder();
+			manifest.append(MANIFEST_NAME + " " + name + "\n");
+			manifest.append(MANIFEST_SIZE + " " + size + "\n");
+			for (int i = 0; i < parts; i++) {
+				long start = i * chunkSize;
+				long length = Math.min(chunkSize, size - start);
+				manifest.append(start).append(' ').append(length).append(' ')
+						.append(futures.get(i).get()).append(' ')
+						.append(files.get(i).getName()).append('\n');
+			}
+			File file = new File(destDir, name + MANIFEST_SUFFIX);
+			record.add(file);
+			writeAtomic(manifest.toString(), file);
+			success = true;
+			return file;
+		} catch (IllegalArgumentException e) {
+			throw e;
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			shutdown(executor);
+			IOUtil.close(in);
+			if (!success) {
+				rollback(record);
+			}
+		}
+	}
+
+	/**
+	 * 按清单文件将 split 切分的各部分合并为目标文件. 各部分由多个线程同时写入目标文件的对应位置,
+	 * 写入的同时校验每部分的字节数和 MD5 值, 校验失败时删除目标文件
+	 * 
+	 * @param manifest
+	 *            清单文件, 各部分与其在同一目录
+	 * @param dest
+	 *            目标文件, 已存在时被覆盖
+	 * @see #split(File, long, File)
+	 */
+	public static void merge(File manifest, File dest) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		merge(manifest, dest, processors);
+	}
+
+	/**
+	 * 按清单文件将 split 切分的各部分合并为目标文件
+	 * 
+	 * @param manifest
+	 *            清单文件, 各部分与其在同一目录
+	 * @param dest
+	 *            目标文件, 已存在时被覆盖
+	 * @param parallelism
+	 *            并行写入的线程数
+	 * @see #merge(File, File)
+	 */
+	public static void merge(File manifest, File dest, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		List<String[]> parts = new ArrayList<String[]>();
+		long size = parseManifest(manifest, parts);
+		File dir = manifest.getAbsoluteFile().getParentFile();
+		RandomAccessFile out = null;
+		ExecutorService executor = null;
+		boolean success = false;
+		try {
+			out = new RandomAccessFile(dest, "rw");
+			out.setLength(size);
+			FileChannel channel = out.getChannel();
+			executor = Executors.newFixedThreadPool(Math.max(1,
+					Math.min(parallelism, parts.size())));
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (String[] part : parts) {
+				futures.add(executor.submit(new MergeTask(new File(dir,
+						part[3]), Long.parseLong(part[0]), Long
+						.parseLong(part[1]), part[2], channel)));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			channel.force(false);
+			success = true;
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			shutdown(executor);
+			IOUtil.close(out);
+			if (!success) {
+				dest.delete();
+			}
+		}
+	}
+
+	/**
+	 * 清空目录
+	 * 
+	 * @param dir
+	 *            目录
+	 */
+	public static void cleanDirectory(File dir) {
+		cleanDirectory(dir, 1);
+	}
+
+	/**
+	 * 并行清空目录
+	 * 
+	 * @param dir
+	 *            目录
+	 * @param parallelism
+	 *            并行删除的线程数
+	 * @return 删除的文件数及字节数
+	 */
+	public static FileReport cleanDirectory(File dir, int parallelism) {
+		if (!dir.exists()) {
 			throw new FileCastException(dir + " does not exist");
 		}
 		if (!dir.isDirectory()) {
 			throw new FileCastException(dir + " is not a directory");
 		}
-		File[] list = dir.listFiles();
-		if (list != null && list.length > 0) {
-			for (File item : list) {
-				delete(item);
-			}
+		try {
+			return delete(children(dir.toPath()), parallelism);
+		} catch (IOException e) {
+			throw new UnexpectedException(e);
 		}
 	}
-	
+
 	/**
 	 * 获取文件名称, 不包含文件扩展名
 	 * 
@@ -515,194 +1654,779 @@ public class FileUtil {
 	}
 
 	/**
-	 * 创建目录
+	 * 创建目录
+	 * 
+	 * @param parent
+	 *            父目录
+	 * @param child
+	 *            子目录名称
+	 * @param skip
+	 *            若目录已存在, 是否跳过
+	 * @return
+	 */
+	public static File mkdir(File parent, String child, boolean skip) {
+		File dir = new File(parent, child);
+		if (dir.exists()) {
+			if (!skip) {
+				throw new FileCastException(dir + " directory already exists");
+			}
+		} else {
+			dir.mkdirs();
+		}
+		return dir;
+	}
+	
+	/**
+	 * 获取与系统文件分隔符统一的路径
+	 * 
+	 * @param path
+	 *            源路径
+	 * @return
+	 */
+	public static String getUniformPath(String path) {
+		if (File.separator.equals("/")) {
+			int index = path.indexOf("\\");
+			if (index != INDEX_NOT_FOUND) {
+				path = path.replace("\\", File.separator);
+			}
+		} else if (File.separator.equals("\\")) {
+			int index = path.indexOf("/");
+			if (index != INDEX_NOT_FOUND) {
+				path = path.replace("/", File.separator);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * 设置 FileUtil 报告IO统计的目标. 设置后拷贝, 流的写出及文件的读取会记录字节数与耗时.
+	 * 流之间的写出在读写两侧分别记录; 文件之间的通道传输及缓冲区的直接写出不经过流,
+	 * 每次传输同时计为一次读取和一次写出, 因此无论是否走快速路径, 读写字节数都一致.
+	 * 也可以通过系统属性 jutil.metrics=true 开启, 统计名称为 FileUtil
+	 * 
+	 * @param metrics
+	 *            统计, 为null时不统计
+	 * @see IOMetrics#get(String)
+	 */
+	public static void setMetrics(IOMetrics metrics) {
+		FileUtil.metrics = metrics;
+	}
+
+	/**
+	 * 获取 FileUtil 报告IO统计的目标
+	 * 
+	 * @return 未开启时返回null
+	 */
+	public static IOMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 写出文本内容
+	 * 
+	 * @param text
+	 *            文本内容
+	 * @param writer
+	 *            Writer
+	 */
+	private static void write(String text, Writer writer) {
+		try {
+			writer.write(text);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			IOUtil.close(writer);
+		}
+	}
+
+	/**
+	 * 记录一次不经过流的传输, 同时计为读取和写出
+	 */
+	private static void record(IOMetrics metrics, long bytes, long nanos) {
+		if (metrics != null) {
+			metrics.recordRead(bytes, nanos);
+			metrics.recordWrite(bytes, nanos);
+		}
+	}
+
+	/**
+	 * 将缓冲区的内容直接写出到文件通道或直接内存输出流, 堆内缓冲区直接写出其底层数组
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 * @param out
+	 *            输出流
+	 * @return 无法直接写出时返回 false
+	 * @throws IOException
+	 */
+	private static boolean writeBuffer(ByteBuffer buffer, OutputStream out)
+			throws IOException {
+		if (out instanceof FileOutputStream) {
+			FileChannel channel = ((FileOutputStream) out).getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} else if (out instanceof ByteBufferOutputStream) {
+			((ByteBufferOutputStream) out).write(buffer);
+		} else if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.remaining());
+			buffer.position(buffer.limit());
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 使用 FileChannel 在文件之间传输数据, 由操作系统完成拷贝, 数据不经过 JVM 堆
+	 * 
+	 * @param in
+	 *            输入通道
+	 * @param out
+	 *            输出通道
+	 * @param limiter
+	 *            限速器, 为null时不限速
+	 * @param metrics
+	 *            统计, 为null时不统计
+	 * @return 若通道不支持零拷贝传输, 且尚未传输任何数据, 则返回false, 否则返回true
+	 * @throws IOException
+	 */
+	private static boolean transfer(FileChannel in, FileChannel out,
+			RateLimiter limiter, IOMetrics metrics) throws IOException {
+
+		long start = in.position();
+		long position = start;
+		long size = in.size();
+		while (position < size) {
+			long count = Math.min(size - position, TRANSFER_SIZE);
+			if (limiter != null) {
+				count = Math.min(count, THROTTLE_SIZE);
+				try {
+					limiter.acquire(count);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			long time = System.nanoTime();
+			long transferred = in.transferTo(position, count, out);
+			if (transferred > 0) {
+				record(metrics, transferred, System.nanoTime() - time);
+			}
+			if (transferred <= 0) {
+				if (position == start) {
+					return false;
+				}
+				break;
+			}
+			position += transferred;
+		}
+		in.position(position);
+		return true;
+	}
+
+	/**
+	 * 统计文件片段中的换行符个数
+	 * 
+	 * @param channel
+	 *            文件通道
+	 * @param start
+	 *            片段起始位置
+	 * @param end
+	 *            片段结束位置(不包含)
+	 * @param size
+	 *            文件大小
+	 * @return
+	 * @throws IOException
+	 */
+	private static long countLines(FileChannel channel, long start, long end,
+			long size) throws IOException {
+
+		if (start == end) {
+			return 0;
+		}
+		// 多映射一个字节, 用于判断片段末尾的 \r 之后是否紧跟 \n
+		long limit = Math.min(end + 1, size);
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, limit
+				- start);
+		int length = (int) (end - start);
+		byte[] bytes = new byte[SCAN_SIZE];
+		long lines = 0;
+		byte prev = 0;
+		for (int offset = 0; offset < length; offset += bytes.length) {
+			int count = Math.min(bytes.length, length - offset);
+			buffer.get(bytes, 0, count);
+			for (int i = 0; i < count; i++) {
+				byte b = bytes[i];
+				if (b == LF) {
+					if (prev != CR) {
+						lines++;
+					}
+				} else if (b == CR) {
+					lines++;
+				}
+				prev = b;
+			}
+		}
+		if (prev == CR && buffer.hasRemaining() && buffer.get() == LF) {
+			lines--;
+		}
+		return lines;
+	}
+
+	/**
+	 * 从文件末尾向前查找, 返回倒数第 lines 行的起始位置. 文件末尾的换行符不算作新的一行
+	 * 
+	 * @param channel
+	 *            文件通道
+	 * @param size
+	 *            文件大小
+	 * @param lines
+	 *            行数
+	 * @return
+	 * @throws IOException
+	 */
+	private static long tailPosition(FileChannel channel, long size, int lines)
+			throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+		byte[] bytes = buffer.array();
+		long end = size;
+		int found = 0;
+		byte after = 0;
+		boolean trailing = true;
+		while (end > 0) {
+			int count = (int) Math.min(bytes.length, end);
+			long start = end - count;
+			buffer.clear().limit(count);
+			while (buffer.hasRemaining()
+					&& channel.read(buffer, start + buffer.position()) != EOF) {
+			}
+			for (int i = count - 1; i >= 0; i--) {
+				byte b = bytes[i];
+				boolean terminator = b == LF || (b == CR && after != LF);
+				after = b;
+				if (!terminator) {
+					trailing = false;
+					continue;
+				}
+				if (trailing) {
+					trailing = false;
+					continue;
+				}
+				if (++found == lines) {
+					return start + i + 1;
+				}
+			}
+			end = start;
+		}
+		return 0;
+	}
+
+	/**
+	 * 逐行读取
+	 * 
+	 * @param r
+	 *            Reader
+	 * @return
+	 */
+	private static String[] read(Reader r) {
+		BufferedReader reader = null;
+		try {
+			String read;
+			reader = new BufferedReader(r);
+			List<String> contents = new ArrayList<String>();
+			while ((read = reader.readLine()) != null) {
+				contents.add(read);
+			}
+			return ArrayUtil.asArray(contents);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			IOUtil.close(reader);
+		}
+	}
+
+	/**
+	 * 读取内容
+	 * 
+	 * @param reader
+	 *            Reader
+	 * @return
+	 */
+	private static String readAsString(Reader reader) {
+		try {
+			int read;
+			char[] buffer = new char[CHAR_BUFFER_SIZE];
+			StringBuilder builder = new StringBuilder();
+			while ((read = reader.read(buffer)) != EOF) {
+				builder.append(buffer, 0, read);
+			}
+			return builder.toString();
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			IOUtil.close(reader);
+		}
+	}
+
+	/**
+	 * 按文件大小分配缓冲区, 一次读入文件的全部字节
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] readBytes(File file) throws IOException {
+		IOMetrics metrics = FileUtil.metrics;
+		long start = System.nanoTime();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			long size = in.getChannel().size();
+			if (size > MAX_ARRAY_SIZE) {
+				throw new FileCastException(file + " is too large to read");
+			}
+			byte[] bytes = IOUtil.readFully(in, size);
+			if (metrics != null) {
+				metrics.recordRead(bytes.length, System.nanoTime() - start);
+			}
+			return bytes;
+		} finally {
+			IOUtil.close(in);
+		}
+	}
+
+	/**
+	 * 将 \r\n, \r, \n 统一为 \r\n, 并去掉末尾的换行符
+	 * 
+	 * @param text
+	 *            文本内容
+	 * @return
+	 */
+	private static String normalizeLineSeparators(String text) {
+		int end = text.length();
+		if (end > 0 && text.charAt(end - 1) == LF) {
+			end--;
+		}
+		if (end > 0 && text.charAt(end - 1) == CR) {
+			end--;
+		}
+		StringBuilder builder = null;
+		int start = 0;
+		for (int i = 0; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == CR || c == LF) {
+				if (builder == null) {
+					builder = new StringBuilder(end + end / 16);
+				}
+				builder.append(text, start, i).append(CRLF);
+				if (c == CR && i + 1 < end && text.charAt(i + 1) == LF) {
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		if (builder == null) {
+			return text.substring(0, end);
+		}
+		return builder.append(text, start, end).toString();
+	}
+
+	/**
+	 * 取出遍历到的全部文件
+	 * 
+	 * @param walker
+	 *            FileWalker
+	 * @return
+	 */
+	private static List<File> list(FileWalker walker) {
+		try {
+			List<File> list = new ArrayList<File>();
+			while (walker.hasNext()) {
+				list.add(walker.next());
+			}
+			return list;
+		} finally {
+			walker.close();
+		}
+	}
+
+	/**
+	 * 拷贝文件到目录
+	 * 
+	 * @param srcFile
+	 *            源文件
+	 * @param destDir
+	 *            目的目录
+	 * @param record
+	 *            记录列表
+	 * @throws IOException
+	 */
+	private static void copyFileToDirectory(File srcFile, File destDir,
+			List<File> record, RateLimiter limiter) throws IOException {
+
+		File destFile = new File(destDir, srcFile.getName());
+		if (destFile.exists()) {
+			throw new FileCastException(destFile + " file already exists");
+		}
+		record.add(destFile);
+		copyFile(srcFile, destFile, limiter);
+	}
+
+	/**
+	 * 拷贝文件内容, 目标文件打开失败时源文件的输入流也被关闭
+	 * 
+	 * @param srcFile
+	 *            源文件
+	 * @param destFile
+	 *            目标文件
+	 * @throws IOException
+	 */
+	private static void copyFile(File srcFile, File destFile,
+			RateLimiter limiter) throws IOException {
+		ResourceScope scope = IOUtil.openScope();
+		try {
+			InputStream in = scope.register(new FileInputStream(srcFile));
+			OutputStream out = scope.register(new FileOutputStream(destFile));
+			write(in, out, BUFFER_SIZE, limiter);
+		} finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * 拷贝目录到目录
+	 * 
+	 * @param srcDir
+	 *            源目录
+	 * @param destDir
+	 *            目的目录
+	 * @param record
+	 *            记录列表
+	 * @throws Throwable
+	 */
+	private static void copyDirectorToDirector(File srcDir, File destDir,
+			List<File> record, RateLimiter limiter) throws Throwable {
+
+		destDir = new File(destDir, srcDir.getName());
+		if (!destDir.exists()) {
+			destDir.mkdir();
+			record.add(destDir);
+		}
+		File[] files = srcDir.listFiles();
+		for (File file : files) {
+			if (file.isFile()) {
+				copyFileToDirectory(file, destDir, record, limiter);
+			} else if (file.isDirectory()) {
+				copyDirectorToDirector(file, destDir, record, limiter);
+			}
+		}
+	}
+
+	/**
+	 * 在目的目录下创建与源目录一致的目录结构, 并收集待拷贝的文件
+	 * 
+	 * @param srcDir
+	 *            源目录
+	 * @param destDir
+	 *            目的目录
+	 * @param record
+	 *            记录列表
+	 * @param pairs
+	 *            待拷贝的文件及其目的目录
+	 */
+	private static void prepareDirectorToDirector(File srcDir, File destDir,
+			List<File> record, List<File[]> pairs) {
+
+		destDir = new File(destDir, srcDir.getName());
+		if (!destDir.exists()) {
+			destDir.mkdir();
+			record.add(destDir);
+		}
+		File[] files = srcDir.listFiles();
+		for (File file : files) {
+			if (file.isFile()) {
+				pairs.add(new File[] { file, destDir });
+			} else if (file.isDirectory()) {
+				prepareDirectorToDirector(file, destDir, record, pairs);
+			}
+		}
+	}
+
+	/**
+	 * 强行拷贝文件到目录
 	 * 
-	 * @param parent
-	 *            父目录
-	 * @param child
-	 *            子目录名称
-	 * @param skip
-	 *            若目录已存在, 是否跳过
-	 * @return
+	 * @param srcFile
+	 *            源文件
+	 * @param destDir
+	 *            目的目录
+	 * @param overwrite
+	 *            存在是否覆盖
+	 * @throws Throwable
 	 */
-	public static File mkdir(File parent, String child, boolean skip) {
-		File dir = new File(parent, child);
-		if (dir.exists()) {
-			if (!skip) {
-				throw new FileCastException(dir + " directory already exists");
-			}
-		} else {
-			dir.mkdirs();
+	private static void forceCopyFileToDirectory(File srcFile, File destDir,
+			boolean overwrite, RateLimiter limiter) throws Throwable {
+
+		File destFile = new File(destDir, srcFile.getName());
+		if (!destFile.exists() || (destFile.exists() && overwrite)) {
+			copyFile(srcFile, destFile, limiter);
 		}
-		return dir;
 	}
-	
+
 	/**
-	 * 获取与系统文件分隔符统一的路径
+	 * 强行拷贝目录到目录
 	 * 
-	 * @param path
-	 *            源路径
-	 * @return
+	 * @param srcDir
+	 *            源目录
+	 * @param destDir
+	 *            目的目录
+	 * @param overwrite
+	 *            存在是否覆盖
+	 * @throws Throwable
 	 */
-	public static String getUniformPath(String path) {
-		if (File.separator.equals("/")) {
-			int index = path.indexOf("\\");
-			if (index != INDEX_NOT_FOUND) {
-				path = path.replace("\\", File.separator);
-			}
-		} else if (File.separator.equals("\\")) {
-			int index = path.indexOf("/");
-			if (index != INDEX_NOT_FOUND) {
-				path = path.replace("/", File.separator);
+	private static void forceCopyDirectorToDirector(File srcDir, File destDir,
+			boolean overwrite, RateLimiter limiter) throws Throwable {
+
+		destDir = new File(destDir, srcDir.getName());
+		if (!destDir.exists()) {
+			destDir.mkdir();
+		}
+		File[] files = srcDir.listFiles();
+		for (File file : files) {
+			if (file.isFile()) {
+				forceCopyFileToDirectory(file, destDir, overwrite, limiter);
+			} else if (file.isDirectory()) {
+				forceCopyDirectorToDirector(file, destDir, overwrite, limiter);
 			}
 		}
-		return path;
 	}
 
 	/**
-	 * 写出文本内容
+	 * 删除文件或目录列表
 	 * 
-	 * @param text
-	 *            文本内容
-	 * @param writer
-	 *            Writer
+	 * @param roots
+	 *            文件或目录列表
+	 * @param parallelism
+	 *            并行删除的线程数
+	 * @return
 	 */
-	private static void write(String text, Writer writer) {
-		BufferedReader reader = null;
+	private static FileReport delete(List<Path> roots, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		FileReport report = new FileReport();
+		ExecutorService executor = null;
 		try {
-			int read;
-			char[] buffer = new char[BUFFER_SIZE];
-			reader = new BufferedReader(new StringReader(text));
-			while ((read = reader.read(buffer)) != EOF) {
-				writer.write(buffer, 0, read);
+			if (parallelism == 1) {
+				for (Path root : roots) {
+					deleteTree(root, report);
+				}
+			} else {
+				// 逐层展开目录, 直到得到足够多的子树分配给各个线程
+				List<Path> dirs = new ArrayList<Path>();
+				Deque<Path> subtrees = new ArrayDeque<Path>(roots);
+				int target = parallelism * 4;
+				while (!subtrees.isEmpty() && subtrees.size() < target) {
+					Path path = subtrees.poll();
+					if (deleteEntry(path, report)) {
+						dirs.add(path);
+						subtrees.addAll(children(path));
+					}
+				}
+				executor = Executors.newFixedThreadPool(parallelism);
+				CompletionService<Void> service = new ExecutorCompletionService<Void>(
+						executor);
+				for (Path subtree : subtrees) {
+					service.submit(new DeleteTask(subtree, report));
+				}
+				for (int i = 0; i < subtrees.size(); i++) {
+					service.take().get();
+				}
+				for (int i = dirs.size() - 1; i >= 0; i--) {
+					Files.deleteIfExists(dirs.get(i));
+				}
 			}
 		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
 			throw new UnexpectedException(e);
 		} finally {
-			IOUtil.close(reader, writer);
+			shutdown(executor);
 		}
+		report.finish();
+		return report;
 	}
 
 	/**
-	 * 逐行读取
+	 * 迭代删除目录树, 先删除遍历到的文件, 最后由深至浅删除目录
 	 * 
-	 * @param r
-	 *            Reader
-	 * @return
+	 * @param root
+	 *            文件或目录
+	 * @param report
+	 *            删除报告
+	 * @throws IOException
 	 */
-	private static String[] read(Reader r) {
-		BufferedReader reader = null;
-		try {
-			String read;
-			reader = new BufferedReader(r);
-			List<String> contents = new ArrayList<String>();
-			while ((read = reader.readLine()) != null) {
-				contents.add(read);
+	private static void deleteTree(Path root, FileReport report)
+			throws IOException {
+
+		List<Path> dirs = new ArrayList<Path>();
+		Deque<Path> stack = new ArrayDeque<Path>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Path path = stack.pop();
+			if (deleteEntry(path, report)) {
+				dirs.add(path);
+				for (Path child : children(path)) {
+					stack.push(child);
+				}
 			}
-			return ArrayUtil.asArray(contents);
-		} catch (Throwable e) {
-			throw new UnexpectedException(e);
-		} finally {
-			IOUtil.close(reader);
+		}
+		for (int i = dirs.size() - 1; i >= 0; i--) {
+			Files.deleteIfExists(dirs.get(i));
 		}
 	}
 
 	/**
-	 * 读取内容
+	 * 删除文件或符号链接, 目录留给调用方在清空后删除
 	 * 
-	 * @param r
-	 *            Reader
-	 * @return
+	 * @param path
+	 *            文件或目录
+	 * @param report
+	 *            删除报告
+	 * @return 若是目录则返回true, 否则返回false
+	 * @throws IOException
 	 */
-	private static String readAsString(Reader r) {
-		String[] result = read(r);
-		int size = result.length - 1;
-		StringBuilder builder = new StringBuilder();
-		for (int i = 0; i < size; i++) {
-			builder.append(result[i]).append("\r\n");
+	private static boolean deleteEntry(Path path, FileReport report)
+			throws IOException {
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		if (attributes.isDirectory()) {
+			return true;
 		}
-		builder.append(result[size]);
-		return builder.toString();
+		if (Files.deleteIfExists(path)) {
+			report.add(attributes.isRegularFile() ? attributes.size() : 0);
+		}
+		return false;
 	}
 
 	/**
-	 * 目录下的文件列表
+	 * 目录下的直接子文件或子目录
 	 * 
 	 * @param dir
 	 *            目录
-	 * @param filters
-	 *            FilenameFilter
 	 * @return
+	 * @throws IOException
 	 */
-	private static List<File> list(File dir, FilenameFilter filters) {
-		if (dir.isFile()) {
-			throw new FileCastException(dir + " is not a directory");
-		}
-		File[] files = dir.listFiles(filters);
-		List<File> list = new ArrayList<File>();
-		for (File file : files) {
-			if (file.isFile()) {
-				list.add(file);
-			} else if (file.isDirectory()) {
-				list.addAll(list(file, filters));
+	private static List<Path> children(Path dir) throws IOException {
+		List<Path> children = new ArrayList<Path>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+		try {
+			for (Path child : stream) {
+				children.add(child);
 			}
+		} finally {
+			IOUtil.close(stream);
 		}
-		return list;
+		return children;
 	}
 
 	/**
-	 * 拷贝文件到目录
+	 * 同步文件
 	 * 
 	 * @param srcFile
 	 *            源文件
-	 * @param destDir
-	 *            目的目录
-	 * @param record
-	 *            记录列表
+	 * @param destFile
+	 *            目的文件
+	 * @param checksum
+	 *            是否比较文件内容的MD5值
+	 * @param report
+	 *            同步报告
 	 * @throws Throwable
 	 */
-	private static void copyFileToDirectory(File srcFile, File destDir,
-			List<File> record) throws Throwable {
+	private static void syncFile(File srcFile, File destFile,
+			boolean checksum, FileReport report) throws Throwable {
 
-		File destFile = new File(destDir, srcFile.getName());
-		if (destFile.exists()) {
-			throw new FileCastException(destFile + " file already exists");
+		long length = srcFile.length();
+		long lastModified = srcFile.lastModified();
+		if (destFile.isFile() && destFile.length() == length) {
+			boolean same;
+			if (checksum) {
+				same = MD5Util.getFileMD5(srcFile).equals(
+						MD5Util.getFileMD5(destFile));
+			} else {
+				same = destFile.lastModified() == lastModified;
+			}
+			if (same) {
+				if (destFile.lastModified() != lastModified) {
+					destFile.setLastModified(lastModified);
+				}
+				report.skip(length);
+				return;
+			}
 		}
-		record.add(destFile);
-		write(new FileInputStream(srcFile), new FileOutputStream(destFile));
+		if (destFile.isDirectory()) {
+			report.deleted(delete(destFile, 1));
+		}
+		copyFile(srcFile, destFile, null);
+		destFile.setLastModified(lastModified);
+		report.add(length);
 	}
 
 	/**
-	 * 拷贝目录到目录
+	 * 同步目录
 	 * 
 	 * @param srcDir
 	 *            源目录
 	 * @param destDir
-	 *            目的目录
-	 * @param record
-	 *            记录列表
+	 *            与源目录对应的目的目录
+	 * @param checksum
+	 *            是否比较文件内容的MD5值
+	 * @param delete
+	 *            是否删除源目录中已不存在的文件或目录
+	 * @param report
+	 *            同步报告
 	 * @throws Throwable
 	 */
-	private static void copyDirectorToDirector(File srcDir, File destDir,
-			List<File> record) throws Throwable {
+	private static void syncDirectory(File srcDir, File destDir,
+			boolean checksum, boolean delete, FileReport report)
+			throws Throwable {
 
-		destDir = new File(destDir, srcDir.getName());
+		if (destDir.isFile()) {
+			report.deleted(delete(destDir, 1));
+		}
 		if (!destDir.exists()) {
 			destDir.mkdir();
-			record.add(destDir);
 		}
 		File[] files = srcDir.listFiles();
 		for (File file : files) {
+			File dest = new File(destDir, file.getName());
 			if (file.isFile()) {
-				copyFileToDirectory(file, destDir, record);
+				syncFile(file, dest, checksum, report);
 			} else if (file.isDirectory()) {
-				copyDirectorToDirector(file, destDir, record);
+				syncDirectory(file, dest, checksum, delete, report);
+			}
+		}
+		if (delete) {
+			for (File dest : destDir.listFiles()) {
+				if (!new File(srcDir, dest.getName()).exists()) {
+					report.deleted(delete(dest, 1));
+				}
 			}
 		}
 	}
 
 	/**
-	 * 强行拷贝文件到目录
+	 * 强行剪切文件到目录, 源文件在目的目录已存在且不覆盖时保留在原处, 由调用方删除
 	 * 
 	 * @param srcFile
 	 *            源文件
@@ -712,17 +2436,19 @@ public class FileUtil {
 	 *            存在是否覆盖
 	 * @throws Throwable
 	 */
-	private static void forceCopyFileToDirectory(File srcFile, File destDir,
+	private static void forceMoveFileToDirectory(File srcFile, File destDir,
 			boolean overwrite) throws Throwable {
 
 		File destFile = new File(destDir, srcFile.getName());
-		if (!destFile.exists() || (destFile.exists() && overwrite)) {
-			write(new FileInputStream(srcFile), new FileOutputStream(destFile));
+		if (!destFile.exists() || overwrite) {
+			if (!srcFile.renameTo(destFile)) {
+				forceCopyFileToDirectory(srcFile, destDir, overwrite, null);
+			}
 		}
 	}
 
 	/**
-	 * 强行拷贝目录到目录
+	 * 强行剪切目录到目录, 目的目录不存在时整体重命名, 否则逐个合并其中的文件和目录
 	 * 
 	 * @param srcDir
 	 *            源目录
@@ -732,19 +2458,22 @@ public class FileUtil {
 	 *            存在是否覆盖
 	 * @throws Throwable
 	 */
-	private static void forceCopyDirectorToDirector(File srcDir, File destDir,
+	private static void forceMoveDirectorToDirector(File srcDir, File destDir,
 			boolean overwrite) throws Throwable {
 
 		destDir = new File(destDir, srcDir.getName());
 		if (!destDir.exists()) {
+			if (srcDir.renameTo(destDir)) {
+				return;
+			}
 			destDir.mkdir();
 		}
 		File[] files = srcDir.listFiles();
 		for (File file : files) {
 			if (file.isFile()) {
-				forceCopyFileToDirectory(file, destDir, overwrite);
+				forceMoveFileToDirectory(file, destDir, overwrite);
 			} else if (file.isDirectory()) {
-				forceCopyDirectorToDirector(file, destDir, overwrite);
+				forceMoveDirectorToDirector(file, destDir, overwrite);
 			}
 		}
 	}
@@ -756,42 +2485,308 @@ public class FileUtil {
 	 *            记录列表
 	 */
 	private static void rollback(List<File> record) {
-		try {
+		synchronized (record) {
 			for (File item : record) {
-				delete(item);
+				try {
+					if (item.exists()) {
+						delete(item);
+					}
+				} catch (Throwable e) {
+					/* ignore */
+				}
 			}
-		} catch (Throwable e) {
-			/* ignore */
 		}
 	}
 
 	/**
-	 * 文件扩展名过滤器
+	 * 解析 split 生成的清单文件
+	 * 
+	 * @param manifest
+	 *            清单文件
+	 * @param parts
+	 *            各部分的起始位置, 字节数, MD5 值和文件名称
+	 * @return 原文件的字节数
+	 */
+	private static long parseManifest(File manifest, List<String[]> parts) {
+		String[] lines = read(manifest);
+		try {
+			if (lines == null || lines.length < 2
+					|| !lines[0].startsWith(MANIFEST_NAME + " ")
+					|| !lines[1].startsWith(MANIFEST_SIZE + " ")) {
+				throw new IllegalArgumentException();
+			}
+			long size = Long.parseLong(lines[1].substring(MANIFEST_SIZE
+					.length() + 1));
+			long expected = 0;
+			for (int i = 2; i < lines.length; i++) {
+				String[] part = lines[i].split(" ", 4);
+				if (part.length != 4 || Long.parseLong(part[0]) != expected
+						|| !isPartName(part[3])) {
+					throw new IllegalArgumentException();
+				}
+				expected += Long.parseLong(part[1]);
+				parts.add(part);
+			}
+			if (expected != size) {
+				throw new IllegalArgumentException();
+			}
+			return size;
+		} catch (IllegalArgumentException e) {
+			throw new FileCastException(manifest + " is not a valid manifest");
+		}
+	}
+
+	/**
+	 * 分块文件名只能是清单所在目录下的文件名, 不能包含路径分隔符, 不能是 . 或 ..,
+	 * 也不能是绝对路径, 避免伪造的清单读取目录以外的文件
+	 */
+	private static boolean isPartName(String name) {
+		return name.length() > 0 && name.indexOf('/') < 0
+				&& name.indexOf('\\') < 0 && !name.equals(".")
+				&& !name.equals("..") && !new File(name).isAbsolute();
+	}
+
+	/**
+	 * 停止线程池并等待正在执行的任务结束
+	 * 
+	 * @param executor
+	 *            线程池
+	 */
+	private static void shutdown(ExecutorService executor) {
+		if (executor == null) {
+			return;
+		}
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 写出文件的一部分并计算其MD5值的任务
 	 */
-	private static class ExtensionFilenameFilter implements FilenameFilter {
+	private static class SplitTask implements Callable<String> {
 
-		private String[] extensions;
+		private long start;
+		private long length;
+		private File part;
+		private List<File> record;
+		private FileChannel channel;
 
-		public ExtensionFilenameFilter(String[] extensions) {
-			this.extensions = extensions;
+		public SplitTask(FileChannel channel, long start, long length,
+				File part, List<File> record) {
+			this.channel = channel;
+			this.start = start;
+			this.length = length;
+			this.part = part;
+			this.record = record;
 		}
 
 		@Override
-		public boolean accept(File dir, String name) {
-			if (new File(dir, name).isDirectory()) {
-				return true;
+		public String call() throws Exception {
+			MessageDigest md5 = MD5Util.getMD5();
+			BufferPool pool = BufferPool.getDefault();
+			ByteBuffer buffer = pool.acquireDirect();
+			FileOutputStream out = null;
+			try {
+				out = new FileOutputStream(part);
+				record.add(part);
+				FileChannel outChannel = out.getChannel();
+				long position = start;
+				long end = start + length;
+				while (position < end) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), end
+							- position));
+					int read = channel.read(buffer, position);
+					if (read == EOF) {
+						throw new FileCastException(part
+								+ " source file was truncated");
+					}
+					position += read;
+					buffer.flip();
+					md5.update(buffer.duplicate());
+					while (buffer.hasRemaining()) {
+						outChannel.write(buffer);
+					}
+				}
+			} finally {
+				IOUtil.close(out);
+				pool.releaseDirect(buffer);
 			}
-			if (extensions.length == 0) {
-				return true;
+			return MD5Util.byteArrayToHex(md5.digest());
+		}
+
+	}
+
+	/**
+	 * 校验文件的一部分并写入目标文件对应位置的任务
+	 */
+	private static class MergeTask implements Callable<Void> {
+
+		private File part;
+		private long start;
+		private long length;
+		private String md5;
+		private FileChannel channel;
+
+		public MergeTask(File part, long start, long length, String md5,
+				FileChannel channel) {
+			this.part = part;
+			this.start = start;
+			this.length = length;
+			this.md5 = md5;
+			this.channel = channel;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			if (part.length() != length) {
+				throw new FileCastException(part + " has wrong length");
 			}
-			int index = name.lastIndexOf(".");
-			if (index != INDEX_NOT_FOUND) {
-				name = name.substring(index + 1);
-				if (ArrayUtil.contains(extensions, name)) {
-					return true;
+			MessageDigest digest = MD5Util.getMD5();
+			BufferPool pool = BufferPool.getDefault();
+			ByteBuffer buffer = pool.acquireDirect();
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(part);
+				FileChannel inChannel = in.getChannel();
+				long position = start;
+				int read;
+				buffer.clear();
+				while ((read = inChannel.read(buffer)) != EOF) {
+					buffer.flip();
+					digest.update(buffer.duplicate());
+					while (buffer.hasRemaining()) {
+						position += channel.write(buffer, position);
+					}
+					buffer.clear();
 				}
+				if (position - start != length) {
+					throw new FileCastException(part + " has wrong length");
+				}
+			} finally {
+				IOUtil.close(in);
+				pool.releaseDirect(buffer);
 			}
-			return false;
+			if (!MD5Util.byteArrayToHex(digest.digest()).equalsIgnoreCase(md5)) {
+				throw new FileCastException(part + " is corrupted");
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * 统计文件片段行数的任务
+	 */
+	private static class CountLinesTask implements Callable<Long> {
+
+		private long start;
+		private long end;
+		private long size;
+		private FileChannel channel;
+
+		public CountLinesTask(FileChannel channel, long start, long end,
+				long size) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.size = size;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			return countLines(channel, start, end, size);
+		}
+
+	}
+
+	/**
+	 * 搜索单个文件的任务
+	 */
+	private static class SearchTask implements Callable<List<SearchMatch>> {
+
+		private File file;
+		private FileSearcher searcher;
+
+		public SearchTask(FileSearcher searcher, File file) {
+			this.searcher = searcher;
+			this.file = file;
+		}
+
+		@Override
+		public List<SearchMatch> call() throws Exception {
+			return searcher.search(file);
+		}
+
+	}
+
+	/**
+	 * 删除子树的任务
+	 */
+	private static class DeleteTask implements Callable<Void> {
+
+		private Path root;
+		private FileReport report;
+
+		public DeleteTask(Path root, FileReport report) {
+			this.root = root;
+			this.report = report;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			deleteTree(root, report);
+			return null;
+		}
+
+	}
+
+	/**
+	 * 遍历子目录的任务
+	 */
+	private static class ListTask implements Callable<List<File>> {
+
+		private Path dir;
+		private PathMatcher matcher;
+
+		public ListTask(Path dir, PathMatcher matcher) {
+			this.dir = dir;
+			this.matcher = matcher;
+		}
+
+		@Override
+		public List<File> call() throws Exception {
+			return list(new FileWalker(dir, matcher, true));
+		}
+
+	}
+
+	/**
+	 * 拷贝文件到目录的任务
+	 */
+	private static class CopyTask implements Callable<Long> {
+
+		private File srcFile;
+		private File destDir;
+		private List<File> record;
+		private RateLimiter limiter;
+
+		public CopyTask(File srcFile, File destDir, List<File> record,
+				RateLimiter limiter) {
+			this.srcFile = srcFile;
+			this.destDir = destDir;
+			this.record = record;
+			this.limiter = limiter;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			copyFileToDirectory(srcFile, destDir, record, limiter);
+			return srcFile.length();
 		}
 
 	}
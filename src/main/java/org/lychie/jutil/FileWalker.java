@@ -0,0 +1,236 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.Set;
+import java.util.Deque;
+import java.io.Closeable;
+import java.util.HashSet;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.nio.file.LinkOption;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.DirectoryStream;
+import java.util.NoSuchElementException;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.lychie.jutil.exception.UnexpectedException;
+
+/**
+ * 目录遍历迭代器, 按需逐个返回目录树下匹配的文件. 每个条目只读取一次文件属性,
+ * 默认不会进入符号链接指向的目录; 跟随链接时跳过指向当前目录或其上级目录的链接, 避免死循环.
+ * 遍历完毕或调用 close 时释放打开的目录
+ * 
+ * @author Lychie Fan
+ */
+public class FileWalker implements Iterator<File>, Closeable {
+
+	private static final int INDEX_NOT_FOUND = -1;
+
+	private File next;
+	private boolean closed;
+	private boolean followLinks;
+	private PathMatcher matcher;
+	/* 跟随链接时记录已打开目录的真实路径, 用于识别循环链接 */
+	private Deque<Path> dirs = new ArrayDeque<Path>();
+	private Deque<DirectoryStream<Path>> streams = new ArrayDeque<DirectoryStream<Path>>();
+	private Deque<Iterator<Path>> iterators = new ArrayDeque<Iterator<Path>>();
+
+	FileWalker(Path root, PathMatcher matcher) {
+		this(root, matcher, false);
+	}
+
+	/**
+	 * @param root
+	 *            根目录
+	 * @param matcher
+	 *            文件匹配器
+	 * @param followLinks
+	 *            是否进入符号链接指向的目录
+	 */
+	FileWalker(Path root, PathMatcher matcher, boolean followLinks) {
+		this.matcher = matcher;
+		this.followLinks = followLinks;
+		try {
+			open(root);
+		} catch (Throwable e) {
+			close();
+			throw new UnexpectedException(e);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		if (closed) {
+			return false;
+		}
+		try {
+			next = advance();
+		} catch (Throwable e) {
+			close();
+			throw new UnexpectedException(e);
+		}
+		if (next == null) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public File next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("no more files");
+		}
+		File file = next;
+		next = null;
+		return file;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * 释放打开的目录, 可重复调用
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			next = null;
+			while (!streams.isEmpty()) {
+				IOUtil.close(streams.pop());
+			}
+			iterators.clear();
+			dirs.clear();
+		}
+	}
+
+	/**
+	 * 文件扩展名匹配器, 使用哈希集合判断, 不传入扩展名时匹配全部文件
+	 * 
+	 * @param extensions
+	 *            文件扩展名
+	 * @return
+	 */
+	static PathMatcher extensionMatcher(String... extensions) {
+		final Set<String> set = new HashSet<String>();
+		for (String extension : extensions) {
+			set.add(extension);
+		}
+		return new PathMatcher() {
+			@Override
+			public boolean matches(Path path) {
+				if (set.isEmpty()) {
+					return true;
+				}
+				String name = path.getFileName().toString();
+				int index = name.lastIndexOf(".");
+				return index != INDEX_NOT_FOUND
+						&& set.contains(name.substring(index + 1));
+			}
+		};
+	}
+
+	/**
+	 * glob 模式匹配器. 模式中不含目录分隔符时匹配文件名称, 否则匹配相对于根目录的路径
+	 * 
+	 * @param root
+	 *            根目录
+	 * @param glob
+	 *            glob 模式, 如 *.xml, conf/*.json
+	 * @return
+	 */
+	static PathMatcher globMatcher(final Path root, String glob) {
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+				"glob:" + glob);
+		final boolean relative = glob.indexOf('/') != INDEX_NOT_FOUND;
+		return new PathMatcher() {
+			@Override
+			public boolean matches(Path path) {
+				if (relative) {
+					return matcher.matches(root.relativize(path));
+				}
+				return matcher.matches(path.getFileName());
+			}
+		};
+	}
+
+	/**
+	 * 查找下一个匹配的文件
+	 * 
+	 * @return 若已遍历完毕则返回null
+	 * @throws Exception
+	 */
+	private File advance() throws Exception {
+		while (!iterators.isEmpty()) {
+			Iterator<Path> iterator = iterators.peek();
+			if (!iterator.hasNext()) {
+				iterators.pop();
+				IOUtil.close(streams.pop());
+				dirs.poll();
+				continue;
+			}
+			Path path = iterator.next();
+			BasicFileAttributes attributes = Files.readAttributes(path,
+					BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			if (attributes.isDirectory()) {
+				open(path);
+				continue;
+			}
+			boolean file = attributes.isRegularFile();
+			if (attributes.isSymbolicLink()) {
+				file = Files.isRegularFile(path);
+				if (followLinks && Files.isDirectory(path)) {
+					if (!isLoop(dirs.peek(), path)) {
+						open(path);
+					}
+					continue;
+				}
+			}
+			if (file && matcher.matches(path)) {
+				return path.toFile();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 判断链接指向的目录是否为当前目录或其上级目录, 进入这样的目录会无限循环
+	 * 
+	 * @param current
+	 *            当前目录的真实路径
+	 * @param link
+	 *            指向目录的符号链接
+	 * @return
+	 * @throws IOException
+	 */
+	static boolean isLoop(Path current, Path link) throws IOException {
+		return current.startsWith(link.toRealPath());
+	}
+
+	/**
+	 * 打开目录并压入遍历栈
+	 * 
+	 * @param dir
+	 *            目录
+	 * @throws IOException
+	 */
+	private void open(Path dir) throws IOException {
+		Path real = followLinks ? dir.toRealPath() : null;
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+		streams.push(stream);
+		iterators.push(stream.iterator());
+		if (real != null) {
+			dirs.push(real);
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,396 @@
+package org.lychie.jutil;
+
+import java.io.File;
+import java.util.Set;
+import java.util.List;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutionException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import org.lychie.jutil.exception.UnexpectedException;
+
+/**
+ * 批量提交的原子写. 每次写出先写入同一目录下的临时文件, 待提交的写出在等待不超过指定的
+ * 时间后作为一批统一提交: 并行地将各个临时文件刷到磁盘, 按写出的顺序重命名为目标文件,
+ * 最后每个目录只刷一次磁盘. 大量小文件的写出由此分摊了 fsync 的开销, 且任何时刻崩溃,
+ * 目标文件要么是旧的内容, 要么是完整的新内容
+ * 
+ * @author Lychie Fan
+ */
+public class GroupCommitWriter implements Closeable {
+
+	private static final int MAX_BATCH_SIZE = 1024;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final AtomicLong sequence = new AtomicLong();
+
+	private long maxLatency;
+	private Thread thread;
+	private ExecutorService executor;
+	private long oldest;
+	private long submitted;
+	private long committed;
+	private boolean flushing;
+	private volatile boolean closed;
+	private List<Entry> pending = new ArrayList<Entry>();
+	private final AtomicLong commits = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	GroupCommitWriter(long maxLatencyMillis, int parallelism) {
+		this.maxLatency = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+		this.executor = Executors.newFixedThreadPool(parallelism,
+				new DaemonThreadFactory("jutil-group-commit-force"));
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				commitLoop();
+			}
+		}, "jutil-group-commit");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 写出内容到文件, 在所在的批次提交之后返回的 Future 才完成
+	 * 
+	 * @param data
+	 *            写出的内容
+	 * @param file
+	 *            目标文件, 已存在时被替换
+	 * @return 完成时返回目标文件
+	 */
+	public Future<File> write(byte[] data, File file) {
+		AsyncResult<File> result = new AsyncResult<File>(file, null);
+		Path temp = null;
+		try {
+			ensureOpen();
+			temp = stage(data, file, false);
+			synchronized (this) {
+				ensureOpen();
+				if (pending.isEmpty()) {
+					oldest = System.nanoTime();
+					notifyAll();
+				}
+				pending.add(new Entry(file.toPath().toAbsolutePath(), temp,
+						result));
+				submitted++;
+				if (pending.size() >= MAX_BATCH_SIZE) {
+					notifyAll();
+				}
+			}
+		} catch (Throwable e) {
+			deleteQuietly(temp);
+			result.fail(e);
+		}
+		return result;
+	}
+
+	/**
+	 * 写出文本内容到文件, 使用UTF-8字符集编码
+	 * 
+	 * @param text
+	 *            文本内容
+	 * @param file
+	 *            目标文件, 已存在时被替换
+	 * @return 完成时返回目标文件
+	 */
+	public Future<File> write(String text, File file) {
+		try {
+			return write(text.getBytes("UTF-8"), file);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+	}
+
+	/**
+	 * 立即提交所有待提交的写出, 并等待提交完成
+	 */
+	public void flush() {
+		try {
+			synchronized (this) {
+				long target = submitted;
+				// 只有存在待提交的写出时才提前提交, 以免空闲时的 flush 使下一次写出跳过等待
+				if (!pending.isEmpty()) {
+					flushing = true;
+					notifyAll();
+				}
+				while (committed < target) {
+					wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 已提交的批次数
+	 * 
+	 * @return
+	 */
+	public long getCommits() {
+		return commits.get();
+	}
+
+	/**
+	 * 已提交的写出数
+	 * 
+	 * @return
+	 */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	/**
+	 * 提交所有待提交的写出并停止, 可重复调用
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * 等待批次到期并提交, 直到被关闭且没有待提交的写出
+	 */
+	private void commitLoop() {
+		while (true) {
+			List<Entry> batch;
+			long target;
+			synchronized (this) {
+				try {
+					while (!due()) {
+						if (pending.isEmpty()) {
+							wait();
+						} else {
+							long remaining = oldest + maxLatency
+									- System.nanoTime();
+							TimeUnit.NANOSECONDS.timedWait(this, remaining);
+						}
+					}
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				if (pending.isEmpty()) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+				batch = pending;
+				target = submitted;
+				pending = new ArrayList<Entry>();
+				flushing = false;
+			}
+			commit(batch);
+			synchronized (this) {
+				committed = target;
+				notifyAll();
+			}
+		}
+	}
+
+	private boolean due() {
+		if (pending.isEmpty()) {
+			return closed;
+		}
+		return closed || flushing || pending.size() >= MAX_BATCH_SIZE
+				|| System.nanoTime() - oldest >= maxLatency;
+	}
+
+	/**
+	 * 提交一个批次: 并行刷盘, 依次重命名, 每个目录刷盘一次
+	 * 
+	 * @param batch
+	 *            待提交的写出
+	 */
+	private void commit(List<Entry> batch) {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (Entry entry : batch) {
+			futures.add(executor.submit(new ForceTask(entry.temp)));
+		}
+		Set<Path> dirs = new LinkedHashSet<Path>();
+		List<Entry> moved = new ArrayList<Entry>();
+		for (int i = 0; i < batch.size(); i++) {
+			Entry entry = batch.get(i);
+			try {
+				futures.get(i).get();
+				if (entry.result.isDone()) {
+					deleteQuietly(entry.temp);
+					continue;
+				}
+				move(entry.temp, entry.target);
+				dirs.add(entry.target.getParent());
+				moved.add(entry);
+			} catch (Throwable e) {
+				if (e instanceof ExecutionException) {
+					e = e.getCause();
+				}
+				deleteQuietly(entry.temp);
+				entry.result.fail(e);
+			}
+		}
+		for (Path dir : dirs) {
+			forceDirectory(dir);
+		}
+		for (Entry entry : moved) {
+			entry.result.complete(entry.target.toFile());
+		}
+		writes.addAndGet(moved.size());
+		commits.incrementAndGet();
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("writer is closed");
+		}
+	}
+
+	/**
+	 * 将内容写入目标文件所在目录下的临时文件
+	 * 
+	 * @param data
+	 *            写出的内容
+	 * @param file
+	 *            目标文件
+	 * @param force
+	 *            是否在关闭前刷到磁盘
+	 * @return 临时文件
+	 * @throws IOException
+	 */
+	static Path stage(byte[] data, File file, boolean force)
+			throws IOException {
+		Path target = file.toPath().toAbsolutePath();
+		Path temp = target.resolveSibling("." + target.getFileName() + "."
+				+ Long.toHexString(System.nanoTime()) + "-"
+				+ sequence.incrementAndGet() + TEMP_SUFFIX);
+		FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		boolean success = false;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (force) {
+				channel.force(true);
+			}
+			success = true;
+		} finally {
+			IOUtil.close(channel);
+			if (!success) {
+				deleteQuietly(temp);
+			}
+		}
+		return temp;
+	}
+
+	/**
+	 * 将临时文件重命名为目标文件, 文件系统不支持原子重命名时退化为替换
+	 * 
+	 * @param temp
+	 *            临时文件
+	 * @param target
+	 *            目标文件
+	 * @throws IOException
+	 */
+	static void move(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * 将目录项刷到磁盘, 使重命名在崩溃后依然有效. 不支持打开目录的平台(如 Windows)忽略
+	 * 
+	 * @param dir
+	 *            目录
+	 */
+	static void forceDirectory(Path dir) {
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(dir, StandardOpenOption.READ);
+			channel.force(true);
+		} catch (IOException e) {
+			/* ignore */
+		} finally {
+			IOUtil.close(channel);
+		}
+	}
+
+	static void deleteQuietly(Path path) {
+		if (path != null) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				/* ignore */
+			}
+		}
+	}
+
+	/**
+	 * 待提交的写出
+	 */
+	private static class Entry {
+
+		private Path target;
+		private Path temp;
+		private AsyncResult<File> result;
+
+		public Entry(Path target, Path temp, AsyncResult<File> result) {
+			this.target = target;
+			this.temp = temp;
+			this.result = result;
+		}
+
+	}
+
+	/**
+	 * 将临时文件刷到磁盘的任务
+	 */
+	private static class ForceTask implements Callable<Void> {
+
+		private Path temp;
+
+		public ForceTask(Path temp) {
+			this.temp = temp;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.WRITE);
+			try {
+				channel.force(true);
+			} finally {
+				IOUtil.close(channel);
+			}
+			return null;
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,331 @@
+package org.lychie.jutil;
+
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.ObjectName;
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * IO统计, 记录读写的字节数, 次数, 耗时及耗时分布. 计数按线程分散在多个条带上,
+ * 条带之间留有空白, 减少不同线程的计数落在同一缓存行上的伪共享, 记录时只做原子加法,
+ * 不加锁; 读取快照时汇总所有条带, 不保证各项之间严格一致.
+ * 同名的统计全局唯一, 创建时注册到平台 MBeanServer, 名称为
+ * org.lychie.jutil:type=IOMetrics,name=统计名称
+ * 
+ * @author Lychie Fan
+ */
+public class IOMetrics implements IOMetricsMXBean {
+
+	/*
+	 * 每个条带的槽位: 读写各有字节数, 次数, 总耗时, 最大耗时, 共8个long即64字节.
+	 * AtomicLongArray 不保证按缓存行对齐, 因此条带的跨度取16个long即128字节,
+	 * 使用的64字节之后留出64字节空白, 无论数组的起始地址如何,
+	 * 相邻条带的槽位都不会落在同一个64字节的缓存行上
+	 */
+	private static final int BYTES = 0;
+	private static final int OPS = 1;
+	private static final int NANOS = 2;
+	private static final int MAX = 3;
+	private static final int READ = 0;
+	private static final int WRITE = 4;
+	private static final int SLOTS = 16;
+	private static final int BUCKETS = 64;
+	/* 耗时分布每个条带的跨度, 64个区间之后留出8个long的空白 */
+	private static final int SPAN = BUCKETS + 8;
+	private static final int STRIPES = stripes();
+	private static final String DOMAIN = "org.lychie.jutil";
+	private static final Map<String, IOMetrics> registry = new ConcurrentHashMap<String, IOMetrics>();
+
+	private final String name;
+	/* 首尾各留一个条带的空白, 减少与数组头部及相邻对象共享缓存行 */
+	private final AtomicLongArray counters = new AtomicLongArray(
+			(STRIPES + 2) * SLOTS);
+	private final AtomicLongArray readHistogram = new AtomicLongArray(
+			(STRIPES + 1) * SPAN);
+	private final AtomicLongArray writeHistogram = new AtomicLongArray(
+			(STRIPES + 1) * SPAN);
+
+	private IOMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 获取指定名称的统计, 不存在时创建并注册到JMX
+	 * 
+	 * @param name
+	 *            统计名称
+	 * @return
+	 */
+	public static IOMetrics get(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("argument can not be null");
+		}
+		IOMetrics metrics = registry.get(name);
+		if (metrics != null) {
+			return metrics;
+		}
+		synchronized (registry) {
+			metrics = registry.get(name);
+			if (metrics == null) {
+				metrics = new IOMetrics(name);
+				register(metrics);
+				registry.put(name, metrics);
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * 移除指定名称的统计, 并从JMX注销
+	 * 
+	 * @param name
+	 *            统计名称
+	 */
+	public static void remove(String name) {
+		synchronized (registry) {
+			if (registry.remove(name) != null) {
+				unregister(name);
+			}
+		}
+	}
+
+	/**
+	 * 获取所有统计的快照, 按名称排序
+	 * 
+	 * @return
+	 */
+	public static Map<String, IOSnapshot> snapshots() {
+		Map<String, IOSnapshot> snapshots = new TreeMap<String, IOSnapshot>();
+		for (IOMetrics metrics : registry.values()) {
+			snapshots.put(metrics.name, metrics.snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * 记录一次读取
+	 * 
+	 * @param bytes
+	 *            读取的字节数
+	 * @param nanos
+	 *            耗时(纳秒)
+	 */
+	public void recordRead(long bytes, long nanos) {
+		record(READ, readHistogram, bytes, nanos);
+	}
+
+	/**
+	 * 记录一次写出
+	 * 
+	 * @param bytes
+	 *            写出的字节数
+	 * @param nanos
+	 *            耗时(纳秒)
+	 */
+	public void recordWrite(long bytes, long nanos) {
+		record(WRITE, writeHistogram, bytes, nanos);
+	}
+
+	/**
+	 * 汇总所有条带, 获取当前的快照
+	 * 
+	 * @return
+	 */
+	public IOSnapshot snapshot() {
+		return new IOSnapshot(name, totals(READ), totals(readHistogram),
+				totals(WRITE), totals(writeHistogram));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getReadBytes() {
+		return total(READ + BYTES);
+	}
+
+	@Override
+	public long getReadOps() {
+		return total(READ + OPS);
+	}
+
+	@Override
+	public long getReadNanos() {
+		return total(READ + NANOS);
+	}
+
+	@Override
+	public long getReadLatencyP50() {
+		return snapshot().getReadPercentile(50);
+	}
+
+	@Override
+	public long getReadLatencyP99() {
+		return snapshot().getReadPercentile(99);
+	}
+
+	@Override
+	public long getReadLatencyMax() {
+		return totals(READ)[MAX];
+	}
+
+	@Override
+	public long getWriteBytes() {
+		return total(WRITE + BYTES);
+	}
+
+	@Override
+	public long getWriteOps() {
+		return total(WRITE + OPS);
+	}
+
+	@Override
+	public long getWriteNanos() {
+		return total(WRITE + NANOS);
+	}
+
+	@Override
+	public long getWriteLatencyP50() {
+		return snapshot().getWritePercentile(50);
+	}
+
+	@Override
+	public long getWriteLatencyP99() {
+		return snapshot().getWritePercentile(99);
+	}
+
+	@Override
+	public long getWriteLatencyMax() {
+		return totals(WRITE)[MAX];
+	}
+
+	/**
+	 * 清零所有计数, 与并发的记录之间不保证原子性
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+		for (int i = 0; i < readHistogram.length(); i++) {
+			readHistogram.set(i, 0);
+			writeHistogram.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	private void record(int type, AtomicLongArray histogram, long bytes,
+			long nanos) {
+		int stripe = stripe();
+		int base = (stripe + 1) * SLOTS + type;
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counters.addAndGet(base + BYTES, bytes);
+		counters.incrementAndGet(base + OPS);
+		counters.addAndGet(base + NANOS, nanos);
+		long max;
+		while (nanos > (max = counters.get(base + MAX))) {
+			if (counters.compareAndSet(base + MAX, max, nanos)) {
+				break;
+			}
+		}
+		histogram.incrementAndGet((stripe + 1) * SPAN + bucket(nanos));
+	}
+
+	/**
+	 * 汇总各条带的一个槽位
+	 */
+	private long total(int slot) {
+		long sum = 0;
+		for (int stripe = 1; stripe <= STRIPES; stripe++) {
+			sum += counters.get(stripe * SLOTS + slot);
+		}
+		return sum;
+	}
+
+	/**
+	 * 汇总各条带的读或写槽位: 字节数, 次数, 总耗时, 最大耗时
+	 */
+	private long[] totals(int type) {
+		long[] values = new long[4];
+		for (int stripe = 1; stripe <= STRIPES; stripe++) {
+			int base = stripe * SLOTS + type;
+			values[BYTES] += counters.get(base + BYTES);
+			values[OPS] += counters.get(base + OPS);
+			values[NANOS] += counters.get(base + NANOS);
+			values[MAX] = Math.max(values[MAX], counters.get(base + MAX));
+		}
+		return values;
+	}
+
+	private static long[] totals(AtomicLongArray histogram) {
+		long[] buckets = new long[BUCKETS];
+		for (int stripe = 1; stripe <= STRIPES; stripe++) {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] += histogram.get(stripe * SPAN + i);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * 耗时所在的区间, [2^(i-1), 2^i) 纳秒落在第 i 个区间
+	 */
+	private static int bucket(long nanos) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * 当前线程使用的条带, 线程ID连续分配, 相邻的线程落在不同的条带上
+	 */
+	private static int stripe() {
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	/**
+	 * 条带数为不小于CPU数2倍的2的幂, 最多64个
+	 */
+	private static int stripes() {
+		int n = Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+		int stripes = Integer.highestOneBit(n);
+		return stripes < n ? stripes << 1 : stripes;
+	}
+
+	private static void register(IOMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(metrics.name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(metrics, objectName);
+		} catch (Throwable e) {
+			/* JMX 不可用时只提供编程接口 */
+		}
+	}
+
+	private static void unregister(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.unregisterMBean(objectName(name));
+		} catch (Throwable e) {
+			/* ignore */
+		}
+	}
+
+	private static ObjectName objectName(String name) throws Exception {
+		return new ObjectName(DOMAIN + ":type=IOMetrics,name="
+				+ ObjectName.quote(name));
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+package org.lychie.jutil;
+
+/**
+ * IO统计的JMX接口, 注册名为 org.lychie.jutil:type=IOMetrics,name=统计名称.
+ * 耗时单位为纳秒, 百分位耗时是所在对数区间的上界
+ * 
+ * @author Lychie Fan
+ */
+public interface IOMetricsMXBean {
+
+	String getName();
+
+	long getReadBytes();
+
+	long getReadOps();
+
+	long getReadNanos();
+
+	long getReadLatencyP50();
+
+	long getReadLatencyP99();
+
+	long getReadLatencyMax();
+
+	long getWriteBytes();
+
+	long getWriteOps();
+
+	long getWriteNanos();
+
+	long getWriteLatencyP50();
+
+	long getWriteLatencyP99();
+
+	long getWriteLatencyMax();
+
+	void reset();
+
+}
\ No newline at end of file
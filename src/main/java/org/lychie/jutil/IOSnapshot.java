@@ -0,0 +1,212 @@
+package org.lychie.jutil;
+
+/**
+ * IO统计的快照, 读写的字节数, 次数, 总耗时及按2的幂划分的耗时分布.
+ * 第 i 个区间统计耗时在 [2^(i-1), 2^i) 纳秒之间的次数, 第0个区间统计耗时为0的次数
+ * 
+ * @author Lychie Fan
+ */
+public class IOSnapshot {
+
+	private static final double NANOS_PER_SECOND = 1000 * 1000 * 1000D;
+
+	private final String name;
+	private final long readBytes;
+	private final long readOps;
+	private final long readNanos;
+	private final long readMax;
+	private final long[] readHistogram;
+	private final long writeBytes;
+	private final long writeOps;
+	private final long writeNanos;
+	private final long writeMax;
+	private final long[] writeHistogram;
+
+	IOSnapshot(String name, long[] read, long[] readHistogram, long[] write,
+			long[] writeHistogram) {
+		this.name = name;
+		this.readBytes = read[0];
+		this.readOps = read[1];
+		this.readNanos = read[2];
+		this.readMax = read[3];
+		this.readHistogram = readHistogram;
+		this.writeBytes = write[0];
+		this.writeOps = write[1];
+		this.writeNanos = write[2];
+		this.writeMax = write[3];
+		this.writeHistogram = writeHistogram;
+	}
+
+	/**
+	 * 统计名称
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 读取的字节数
+	 * 
+	 * @return
+	 */
+	public long getReadBytes() {
+		return readBytes;
+	}
+
+	/**
+	 * 读取的次数
+	 * 
+	 * @return
+	 */
+	public long getReadOps() {
+		return readOps;
+	}
+
+	/**
+	 * 读取的总耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+	/**
+	 * 单次读取的最大耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getReadMax() {
+		return readMax;
+	}
+
+	/**
+	 * 单次读取耗时的百分位数(纳秒), 精度为所在区间的上界
+	 * 
+	 * @param percentile
+	 *            百分位, 0 到 100 之间
+	 * @return
+	 */
+	public long getReadPercentile(double percentile) {
+		return percentile(readHistogram, readMax, percentile);
+	}
+
+	/**
+	 * 读取耗时的分布
+	 * 
+	 * @return
+	 */
+	public long[] getReadHistogram() {
+		return readHistogram.clone();
+	}
+
+	/**
+	 * 写出的字节数
+	 * 
+	 * @return
+	 */
+	public long getWriteBytes() {
+		return writeBytes;
+	}
+
+	/**
+	 * 写出的次数
+	 * 
+	 * @return
+	 */
+	public long getWriteOps() {
+		return writeOps;
+	}
+
+	/**
+	 * 写出的总耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+
+	/**
+	 * 单次写出的最大耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getWriteMax() {
+		return writeMax;
+	}
+
+	/**
+	 * 单次写出耗时的百分位数(纳秒), 精度为所在区间的上界
+	 * 
+	 * @param percentile
+	 *            百分位, 0 到 100 之间
+	 * @return
+	 */
+	public long getWritePercentile(double percentile) {
+		return percentile(writeHistogram, writeMax, percentile);
+	}
+
+	/**
+	 * 写出耗时的分布
+	 * 
+	 * @return
+	 */
+	public long[] getWriteHistogram() {
+		return writeHistogram.clone();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": read " + readBytes + " bytes in " + readOps
+				+ " ops (" + rate(readBytes, readNanos) + " bytes/s, p50 "
+				+ getReadPercentile(50) + " ns, p99 " + getReadPercentile(99)
+				+ " ns, max " + readMax + " ns), write " + writeBytes
+				+ " bytes in " + writeOps + " ops ("
+				+ rate(writeBytes, writeNanos) + " bytes/s, p50 "
+				+ getWritePercentile(50) + " ns, p99 "
+				+ getWritePercentile(99) + " ns, max " + writeMax + " ns)";
+	}
+
+	/**
+	 * 字节数除以IO耗时得到的速率
+	 */
+	private static String rate(long bytes, long nanos) {
+		if (nanos == 0) {
+			return "0";
+		}
+		return String.format("%.1f", bytes * NANOS_PER_SECOND / nanos);
+	}
+
+	/**
+	 * 由耗时分布计算百分位数, 不超过实际的最大耗时
+	 */
+	private static long percentile(long[] histogram, long max,
+			double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"percentile must be between 0 and 100");
+		}
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long count = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			count += histogram[i];
+			if (count >= rank && count > 0) {
+				long upper = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE
+						: (1L << i) - 1;
+				return Math.min(upper, max);
+			}
+		}
+		return max;
+	}
+
+}
\ No newline at end of file
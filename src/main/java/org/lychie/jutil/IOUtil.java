@@ -1,12 +1,21 @@
 package org.lychie.jutil;
 
 import java.io.File;
+import java.util.Arrays;
 import java.io.Closeable;
+import java.io.Flushable;
+import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import org.lychie.beanutil.BeanMethod;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.nio.channels.FileChannel;
+import java.io.InterruptedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import org.lychie.jutil.exception.UnexpectedException;
 
 /**
@@ -16,6 +25,12 @@ import org.lychie.jutil.exception.UnexpectedException;
  */
 public class IOUtil {
 
+	private static final int EOF = -1;
+	private static final int CHUNK_SIZE = 1024 * 8;
+	private static final int PIPE_CAPACITY = 1024 * 64;
+	private static final int THROTTLE_SIZE = 1024 * 64;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
 	/**
 	 * 获取CLASSPATH类路径下的文件输入流
 	 * 
@@ -27,6 +42,18 @@ public class IOUtil {
 		return ClassLoader.getSystemClassLoader().getResourceAsStream(pathname);
 	}
 
+	/**
+	 * 获取CLASSPATH类路径下的文件输入流, 资源内容缓存在内存中, 重复读取时不再访问类加载器
+	 * 
+	 * @param pathname
+	 *            相对于类路径下的文件路径名称
+	 * @return 资源不存在时返回null
+	 * @see ResourceCache#getDefault()
+	 */
+	public static InputStream getCachedResourceAsStream(String pathname) {
+		return ResourceCache.getDefault().getResourceAsStream(pathname);
+	}
+
 	/**
 	 * 打开文件输入流
 	 * 
@@ -58,15 +85,265 @@ public class IOUtil {
 	}
 
 	/**
-	 * 尝试刷新缓冲区并关闭流
+	 * 获取读取缓冲区内容(position 到 limit 之间的字节)的输入流, 不复制内容, 也不改变参数缓冲区的位置.
+	 * 可用于 MappedByteBuffer, FileUtil.write 和 MD5Util 会直接处理缓冲区
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 * @return
+	 */
+	public static InputStream asInputStream(ByteBuffer buffer) {
+		return new ByteBufferInputStream(buffer.duplicate());
+	}
+
+	/**
+	 * 创建写入直接内存缓冲区的输出流, 初始大小为8K
+	 * 
+	 * @return
+	 * @see #directOutputStream(int)
+	 */
+	public static ByteBufferOutputStream directOutputStream() {
+		return new ByteBufferOutputStream(CHUNK_SIZE);
+	}
+
+	/**
+	 * 创建写入直接内存缓冲区的输出流, 空间不足时自动增长
+	 * 
+	 * @param initialCapacity
+	 *            初始的字节数
+	 * @return
+	 */
+	public static ByteBufferOutputStream directOutputStream(int initialCapacity) {
+		return new ByteBufferOutputStream(initialCapacity);
+	}
+
+	/**
+	 * 读取输入流的全部内容, 读取完毕后关闭流. 文件输入流按通道剩余的字节数一次分配,
+	 * 其他输入流按 available 预估大小, 不足时再增长
+	 * 
+	 * @param in
+	 *            输入流
+	 * @return
+	 */
+	public static byte[] readFully(InputStream in) {
+		try {
+			if (in instanceof ByteBufferInputStream) {
+				ByteBuffer buffer = ((ByteBufferInputStream) in).getBuffer();
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				return bytes;
+			}
+			if (in instanceof FileInputStream) {
+				FileChannel channel = ((FileInputStream) in).getChannel();
+				return readFully(in, channel.size() - channel.position());
+			}
+			return readFully(in, -1);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * 创建单生产者单消费者的字节管道, 缓冲区大小为64K
+	 * 
+	 * @return
+	 * @see #pipe(int)
+	 */
+	public static BytePipe pipe() {
+		return new BytePipe(PIPE_CAPACITY);
+	}
+
+	/**
+	 * 创建单生产者单消费者的字节管道, 一个线程写出, 另一个线程读取
+	 * 
+	 * @param capacity
+	 *            缓冲区字节数, 向上取整为2的幂
+	 * @return
+	 */
+	public static BytePipe pipe(int capacity) {
+		return new BytePipe(capacity);
+	}
+
+	/**
+	 * 限制输入流的读取速率, 每次读取最多64K字节
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param limiter
+	 *            限速器, 可以被多个流共用
+	 * @return
+	 */
+	public static InputStream throttle(InputStream in, RateLimiter limiter) {
+		return new ThrottledInputStream(in, limiter);
+	}
+
+	/**
+	 * 限制输出流的写出速率, 大块的写出被切分为64K字节逐块获取许可
+	 * 
+	 * @param out
+	 *            输出流
+	 * @param limiter
+	 *            限速器, 可以被多个流共用
+	 * @return
+	 */
+	public static OutputStream throttle(OutputStream out, RateLimiter limiter) {
+		return new ThrottledOutputStream(out, limiter);
+	}
+
+	/**
+	 * 限制通道的读取速率, 每次读取最多64K字节
+	 * 
+	 * @param channel
+	 *            通道
+	 * @param limiter
+	 *            限速器, 可以被多个通道共用
+	 * @return
+	 */
+	public static ReadableByteChannel throttle(ReadableByteChannel channel,
+			RateLimiter limiter) {
+		return new ThrottledReadableChannel(channel, limiter);
+	}
+
+	/**
+	 * 限制通道的写出速率, 大块的写出被切分为64K字节逐块获取许可
+	 * 
+	 * @param channel
+	 *            通道
+	 * @param limiter
+	 *            限速器, 可以被多个通道共用
+	 * @return
+	 */
+	public static WritableByteChannel throttle(WritableByteChannel channel,
+			RateLimiter limiter) {
+		return new ThrottledWritableChannel(channel, limiter);
+	}
+
+	/**
+	 * 统计输入流的读取字节数, 次数及每次读取的耗时
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param metrics
+	 *            统计, 可以被多个流共用
+	 * @return
+	 * @see IOMetrics#get(String)
+	 */
+	public static InputStream instrument(InputStream in, IOMetrics metrics) {
+		return new InstrumentedInputStream(in, metrics);
+	}
+
+	/**
+	 * 统计输出流的写出字节数, 次数及每次写出的耗时
+	 * 
+	 * @param out
+	 *            输出流
+	 * @param metrics
+	 *            统计, 可以被多个流共用
+	 * @return
+	 * @see IOMetrics#get(String)
+	 */
+	public static OutputStream instrument(OutputStream out, IOMetrics metrics) {
+		return new InstrumentedOutputStream(out, metrics);
+	}
+
+	/**
+	 * 统计通道的读取字节数, 次数及每次读取的耗时
+	 * 
+	 * @param channel
+	 *            通道
+	 * @param metrics
+	 *            统计, 可以被多个通道共用
+	 * @return
+	 */
+	public static ReadableByteChannel instrument(ReadableByteChannel channel,
+			IOMetrics metrics) {
+		return new InstrumentedReadableChannel(channel, metrics);
+	}
+
+	/**
+	 * 统计通道的写出字节数, 次数及每次写出的耗时
+	 * 
+	 * @param channel
+	 *            通道
+	 * @param metrics
+	 *            统计, 可以被多个通道共用
+	 * @return
+	 */
+	public static WritableByteChannel instrument(WritableByteChannel channel,
+			IOMetrics metrics) {
+		return new InstrumentedWritableChannel(channel, metrics);
+	}
+
+	/**
+	 * 创建资源作用域, 登记的流或通道在作用域关闭时按相反顺序关闭
+	 * 
+	 * @return
+	 */
+	public static ResourceScope openScope() {
+		return new ResourceScope();
+	}
+
+	/**
+	 * 读取输入流的全部内容, 不关闭流
+	 * 
+	 * @param in
+	 *            输入流
+	 * @param expected
+	 *            预计的字节数, 未知时为负数
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] readFully(InputStream in, long expected) throws IOException {
+		if (expected > MAX_ARRAY_SIZE) {
+			throw new IOException("Stream is too large to read");
+		}
+		int size = (int) expected;
+		if (expected < 0) {
+			size = Math.max(in.available(), CHUNK_SIZE);
+		}
+		byte[] bytes = new byte[size];
+		int count = 0;
+		while (true) {
+			if (count == bytes.length) {
+				// 已读满预计的字节数, 确认是否还有更多内容
+				int b = in.read();
+				if (b == EOF) {
+					return bytes;
+				}
+				if (count == MAX_ARRAY_SIZE) {
+					throw new IOException("Stream is too large to read");
+				}
+				int capacity = (int) Math.min(MAX_ARRAY_SIZE,
+						Math.max((long) count * 2, CHUNK_SIZE));
+				bytes = Arrays.copyOf(bytes, capacity);
+				bytes[count++] = (byte) b;
+			}
+			int read = in.read(bytes, count, bytes.length - count);
+			if (read == EOF) {
+				break;
+			}
+			count += read;
+		}
+		return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
+	}
+
+	/**
+	 * 尝试刷新缓冲区并关闭流, 忽略为null的流
 	 * 
 	 * @param streams
 	 *            流对象
 	 */
 	public static void close(Closeable... streams) {
 		for (Closeable stream : streams) {
+			if (stream == null) {
+				continue;
+			}
 			try {
-				BeanMethod.invoke(stream, "flush");
+				if (stream instanceof Flushable) {
+					((Flushable) stream).flush();
+				}
 			} catch (Throwable e) {
 				/* ignore */
 			} finally {
@@ -79,4 +356,301 @@ public class IOUtil {
 		}
 	}
 
+	/**
+	 * 获取许可, 中断时抛出 InterruptedIOException
+	 */
+	private static void acquire(RateLimiter limiter, long bytes)
+			throws InterruptedIOException {
+		try {
+			limiter.acquire(bytes);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * 限速的输入流
+	 */
+	private static class ThrottledInputStream extends FilterInputStream {
+
+		private RateLimiter limiter;
+
+		public ThrottledInputStream(InputStream in, RateLimiter limiter) {
+			super(in);
+			this.limiter = limiter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != EOF) {
+				acquire(limiter, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+				throws IOException {
+			int read = in.read(bytes, offset, Math.min(length, THROTTLE_SIZE));
+			if (read > 0) {
+				acquire(limiter, read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(Math.min(n, THROTTLE_SIZE));
+			acquire(limiter, skipped);
+			return skipped;
+		}
+
+	}
+
+	/**
+	 * 限速的输出流
+	 */
+	private static class ThrottledOutputStream extends FilterOutputStream {
+
+		private RateLimiter limiter;
+
+		public ThrottledOutputStream(OutputStream out, RateLimiter limiter) {
+			super(out);
+			this.limiter = limiter;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			acquire(limiter, 1);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			while (length > 0) {
+				int n = Math.min(length, THROTTLE_SIZE);
+				acquire(limiter, n);
+				out.write(bytes, offset, n);
+				offset += n;
+				length -= n;
+			}
+		}
+
+	}
+
+	/**
+	 * 限速的读取通道
+	 */
+	private static class ThrottledReadableChannel implements
+			ReadableByteChannel {
+
+		private RateLimiter limiter;
+		private ReadableByteChannel channel;
+
+		public ThrottledReadableChannel(ReadableByteChannel channel,
+				RateLimiter limiter) {
+			this.channel = channel;
+			this.limiter = limiter;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int limit = dst.limit();
+			dst.limit(Math.min(limit, dst.position() + THROTTLE_SIZE));
+			try {
+				int read = channel.read(dst);
+				if (read > 0) {
+					acquire(limiter, read);
+				}
+				return read;
+			} finally {
+				dst.limit(limit);
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+	/**
+	 * 限速的写出通道
+	 */
+	private static class ThrottledWritableChannel implements
+			WritableByteChannel {
+
+		private RateLimiter limiter;
+		private WritableByteChannel channel;
+
+		public ThrottledWritableChannel(WritableByteChannel channel,
+				RateLimiter limiter) {
+			this.channel = channel;
+			this.limiter = limiter;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int limit = src.limit();
+			int n = Math.min(src.remaining(), THROTTLE_SIZE);
+			acquire(limiter, n);
+			src.limit(src.position() + n);
+			try {
+				return channel.write(src);
+			} finally {
+				src.limit(limit);
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+	/**
+	 * 统计读取的输入流, 读到流末尾的调用也计为一次读取
+	 */
+	private static class InstrumentedInputStream extends FilterInputStream {
+
+		private IOMetrics metrics;
+
+		public InstrumentedInputStream(InputStream in, IOMetrics metrics) {
+			super(in);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int b = in.read();
+			metrics.recordRead(b == EOF ? 0 : 1, System.nanoTime() - start);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+				throws IOException {
+			long start = System.nanoTime();
+			int read = in.read(bytes, offset, length);
+			metrics.recordRead(Math.max(read, 0), System.nanoTime() - start);
+			return read;
+		}
+
+	}
+
+	/**
+	 * 统计写出的输出流
+	 */
+	private static class InstrumentedOutputStream extends FilterOutputStream {
+
+		private IOMetrics metrics;
+
+		public InstrumentedOutputStream(OutputStream out, IOMetrics metrics) {
+			super(out);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			out.write(b);
+			metrics.recordWrite(1, System.nanoTime() - start);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			long start = System.nanoTime();
+			out.write(bytes, offset, length);
+			metrics.recordWrite(length, System.nanoTime() - start);
+		}
+
+	}
+
+	/**
+	 * 统计读取的通道
+	 */
+	private static class InstrumentedReadableChannel implements
+			ReadableByteChannel {
+
+		private IOMetrics metrics;
+		private ReadableByteChannel channel;
+
+		public InstrumentedReadableChannel(ReadableByteChannel channel,
+				IOMetrics metrics) {
+			this.channel = channel;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			long start = System.nanoTime();
+			int read = channel.read(dst);
+			metrics.recordRead(Math.max(read, 0), System.nanoTime() - start);
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+	/**
+	 * 统计写出的通道
+	 */
+	private static class InstrumentedWritableChannel implements
+			WritableByteChannel {
+
+		private IOMetrics metrics;
+		private WritableByteChannel channel;
+
+		public InstrumentedWritableChannel(WritableByteChannel channel,
+				IOMetrics metrics) {
+			this.channel = channel;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			long start = System.nanoTime();
+			int written = channel.write(src);
+			metrics.recordWrite(written, System.nanoTime() - start);
+			return written;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package org.lychie.jutil;
+
+import java.io.Reader;
+import java.io.Closeable;
+import java.util.Iterator;
+import java.io.BufferedReader;
+import java.util.NoSuchElementException;
+import org.lychie.jutil.exception.UnexpectedException;
+
+/**
+ * 逐行读取的迭代器, 每次只在内存中保留一行内容. 读取完全部内容或调用 close 时关闭底层流
+ * 
+ * @author Lychie Fan
+ */
+public class LineIterator implements Iterator<String>, Closeable {
+
+	private static final int BUFFER_SIZE = 1024 * 64;
+
+	private String next;
+	private boolean closed;
+	private BufferedReader reader;
+
+	LineIterator(Reader reader) {
+		this.reader = new BufferedReader(reader, BUFFER_SIZE);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		if (closed) {
+			return false;
+		}
+		try {
+			next = reader.readLine();
+		} catch (Throwable e) {
+			close();
+			throw new UnexpectedException(e);
+		}
+		if (next == null) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("no more lines");
+		}
+		String line = next;
+		next = null;
+		return line;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * 关闭底层流, 可重复调用
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			next = null;
+			IOUtil.close(reader);
+		}
+	}
+
+}
\ No newline at end of file
@@ -1,8 +1,27 @@
 package org.lychie.jutil;
 
 import java.io.File;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.InputStream;
+import java.util.Collection;
+import java.io.FileInputStream;
+import java.util.LinkedHashMap;
+import java.nio.charset.Charset;
+import java.util.concurrent.Future;
 import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorCompletionService;
 import org.lychie.jutil.exception.UnexpectedException;
 
 /**
@@ -12,9 +31,40 @@ import org.lychie.jutil.exception.UnexpectedException;
  */
 public final class MD5Util {
 
-	private static final int BUFFER_SIZE = 1024 * 1024 / 4;
+	private static final int EOF = -1;
+	private static final int DIGEST_LENGTH = 16;
 	private static final char[] hexDigits = { '0', '1', '2', '3', '4', '5',
 			'6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+	private static final int POOL_SIZE = Runtime.getRuntime()
+			.availableProcessors() * 2;
+	private static final ExecutorService executor = newExecutor();
+	private static final ThreadLocal<MessageDigest> local = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (Throwable e) {
+				throw new UnexpectedException(e);
+			}
+		}
+	};
+
+	/**
+	 * 摘要处理器
+	 */
+	public interface DigestHandler {
+
+		/**
+		 * 处理一个文件的MD5值
+		 * 
+		 * @param file
+		 *            文件
+		 * @param md5
+		 *            MD5值
+		 */
+		void handle(File file, String md5);
+
+	}
 
 	/**
 	 * 获取MD5密文
@@ -32,6 +82,89 @@ public final class MD5Util {
 		return byteArrayToHex(md5.digest());
 	}
 
+	/**
+	 * 获取MD5密文
+	 * 
+	 * @param source
+	 *            字符串
+	 * @param charset
+	 *            字符串的编码
+	 * @return
+	 */
+	public static String getMD5Str(String source, String charset) {
+		if (source == null) {
+			throw new IllegalArgumentException("argument can not be null");
+		}
+		MessageDigest md5 = getMD5();
+		md5.update(source.getBytes(Charset.forName(charset)));
+		return byteArrayToHex(md5.digest());
+	}
+
+	/**
+	 * 批量获取MD5密文, 同一线程内复用同一个 MessageDigest 实例
+	 * 
+	 * @param sources
+	 *            字符串集合
+	 * @param charset
+	 *            字符串的编码
+	 * @return 与集合的迭代顺序一致的密文数组
+	 */
+	public static String[] getMD5Str(Collection<String> sources, String charset) {
+		String[] array = sources.toArray(new String[sources.size()]);
+		getMD5Str(array, charset, array);
+		return array;
+	}
+
+	/**
+	 * 批量获取MD5密文, 写入预先分配的结果数组. 结果数组可以就是源数组
+	 * 
+	 * @param sources
+	 *            字符串数组
+	 * @param charset
+	 *            字符串的编码
+	 * @param dest
+	 *            结果数组, 长度不小于源数组
+	 */
+	public static void getMD5Str(String[] sources, String charset,
+			String[] dest) {
+		if (dest.length < sources.length) {
+			throw new IllegalArgumentException(
+					"dest length must be at least " + sources.length);
+		}
+		Charset cs = Charset.forName(charset);
+		MessageDigest md5 = getMD5();
+		byte[] digest = new byte[DIGEST_LENGTH];
+		char[] chars = new char[DIGEST_LENGTH * 2];
+		for (int i = 0; i < sources.length; i++) {
+			digest(md5, sources[i], cs, digest, 0);
+			dest[i] = byteArrayToHex(digest, chars);
+		}
+	}
+
+	/**
+	 * 批量获取MD5值, 每个字符串的16字节摘要依次写入预先分配的结果数组,
+	 * 第 i 个字符串的摘要位于 [16 * i, 16 * i + 16)
+	 * 
+	 * @param sources
+	 *            字符串数组
+	 * @param charset
+	 *            字符串的编码
+	 * @param dest
+	 *            结果数组, 长度不小于源数组长度的16倍
+	 */
+	public static void getMD5Bytes(String[] sources, String charset,
+			byte[] dest) {
+		if (dest.length / DIGEST_LENGTH < sources.length) {
+			throw new IllegalArgumentException("dest length must be at least "
+					+ (long) sources.length * DIGEST_LENGTH);
+		}
+		Charset cs = Charset.forName(charset);
+		MessageDigest md5 = getMD5();
+		for (int i = 0; i < sources.length; i++) {
+			digest(md5, sources[i], cs, dest, i * DIGEST_LENGTH);
+		}
+	}
+
 	/**
 	 * 获取文件MD5值
 	 * 
@@ -40,7 +173,92 @@ public final class MD5Util {
 	 * @return
 	 */
 	public static String getFileMD5(File file) {
-		return getInputStreamMD5(IOUtil.openFileInputStream(file));
+		try {
+			return digest(file);
+		} catch (Throwable e) {
+			throw new UnexpectedException(e);
+		}
+	}
+
+	/**
+	 * 并行获取多个文件的MD5值, 同时计算的文件数为CPU个数
+	 * 
+	 * @param files
+	 *            文件集合
+	 * @return 与集合的迭代顺序一致的 文件-MD5值 映射
+	 * @see #getFileMD5(Collection, int)
+	 */
+	public static Map<File, String> getFileMD5(Collection<File> files) {
+		return getFileMD5(files, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 并行获取多个文件的MD5值
+	 * 
+	 * @param files
+	 *            文件集合
+	 * @param parallelism
+	 *            同时计算的文件数
+	 * @return 与集合的迭代顺序一致的 文件-MD5值 映射
+	 */
+	public static Map<File, String> getFileMD5(Collection<File> files,
+			int parallelism) {
+		final Map<File, String> map = new LinkedHashMap<File, String>();
+		for (File file : files) {
+			map.put(file, null);
+		}
+		getFileMD5(files, parallelism, new DigestHandler() {
+			@Override
+			public void handle(File file, String md5) {
+				map.put(file, md5);
+			}
+		});
+		return map;
+	}
+
+	/**
+	 * 并行获取多个文件的MD5值, 每个文件计算完成后立即交给处理器. 处理器由调用线程
+	 * 按完成的先后顺序调用, 无需同步. 同时提交的文件数不超过 parallelism, 文件集合可以很大.
+	 * 计算在所有调用共享的守护线程池中进行, 线程数为CPU个数的2倍, 空闲一分钟后退出.
+	 * 任意文件计算失败时取消其余的文件并抛出异常
+	 * 
+	 * @param files
+	 *            文件集合
+	 * @param parallelism
+	 *            同时计算的文件数
+	 * @param handler
+	 *            摘要处理器
+	 */
+	public static void getFileMD5(Collection<File> files, int parallelism,
+			DigestHandler handler) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be greater than 0");
+		}
+		CompletionService<String> service = new ExecutorCompletionService<String>(
+				executor);
+		Map<Future<String>, File> pending = new HashMap<Future<String>, File>();
+		try {
+			Iterator<File> iterator = files.iterator();
+			while (iterator.hasNext() || !pending.isEmpty()) {
+				while (pending.size() < parallelism && iterator.hasNext()) {
+					File file = iterator.next();
+					pending.put(service.submit(new DigestTask(file)), file);
+				}
+				Future<String> future = service.take();
+				File file = pending.remove(future);
+				handler.handle(file, future.get());
+			}
+		} catch (Throwable e) {
+			if (e instanceof ExecutionException) {
+				e = e.getCause();
+			}
+			throw new UnexpectedException(e);
+		} finally {
+			for (Future<String> future : pending.keySet()) {
+				future.cancel(true);
+			}
+		}
 	}
 
 	/**
@@ -56,10 +274,19 @@ public final class MD5Util {
 				throw new IllegalArgumentException("argument can not be null");
 			}
 			MessageDigest md5 = getMD5();
-			int read;
-			byte[] buffer = new byte[BUFFER_SIZE];
-			while ((read = in.read(buffer)) != -1) {
-				md5.update(buffer, 0, read);
+			if (in instanceof ByteBufferInputStream) {
+				md5.update(((ByteBufferInputStream) in).getBuffer());
+				return byteArrayToHex(md5.digest());
+			}
+			BufferPool pool = BufferPool.getDefault();
+			byte[] buffer = pool.acquire();
+			try {
+				int read;
+				while ((read = in.read(buffer)) != EOF) {
+					md5.update(buffer, 0, read);
+				}
+			} finally {
+				pool.release(buffer);
 			}
 			return byteArrayToHex(md5.digest());
 		} catch (Throwable e) {
@@ -69,22 +296,103 @@ public final class MD5Util {
 		}
 	}
 
-	private static String byteArrayToHex(byte[] bytes) {
-		char[] chars = new char[bytes.length * 2];
+	static String byteArrayToHex(byte[] bytes) {
+		return byteArrayToHex(bytes, new char[bytes.length * 2]);
+	}
+
+	/**
+	 * 转换为十六进制字符串, 使用给定的字符数组作为缓冲
+	 */
+	private static String byteArrayToHex(byte[] bytes, char[] chars) {
 		int index = 0;
 		for (byte by : bytes) {
 			chars[index++] = hexDigits[by >>> 4 & 0xf];
 			chars[index++] = hexDigits[by & 0xf];
 		}
-		return new String(chars);
+		return new String(chars, 0, index);
 	}
 
-	private static MessageDigest getMD5() {
+	/**
+	 * 计算字符串的摘要, 写入结果数组的指定位置
+	 */
+	private static void digest(MessageDigest md5, String source,
+			Charset charset, byte[] dest, int offset) {
+		if (source == null) {
+			throw new IllegalArgumentException("argument can not be null");
+		}
 		try {
-			return MessageDigest.getInstance("MD5");
+			md5.update(source.getBytes(charset));
+			md5.digest(dest, offset, DIGEST_LENGTH);
 		} catch (Throwable e) {
 			throw new UnexpectedException(e);
 		}
 	}
 
+	/**
+	 * 由文件通道读入池中的直接内存缓冲区计算MD5值, 不经过堆内数组
+	 * 
+	 * @param file
+	 *            文件
+	 * @return
+	 * @throws IOException
+	 */
+	private static String digest(File file) throws IOException {
+		BufferPool pool = BufferPool.getDefault();
+		ByteBuffer buffer = pool.acquireDirect();
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			MessageDigest md5 = getMD5();
+			while (channel.read(buffer) != EOF) {
+				buffer.flip();
+				md5.update(buffer);
+				buffer.clear();
+			}
+			return byteArrayToHex(md5.digest());
+		} finally {
+			IOUtil.close(in);
+			pool.releaseDirect(buffer);
+		}
+	}
+
+	/**
+	 * 创建计算文件MD5值共享的线程池, 线程空闲时退出, 不阻止 JVM 退出
+	 */
+	private static ExecutorService newExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE,
+				POOL_SIZE, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(
+						"jutil-md5"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * 获取当前线程的 MessageDigest 实例并重置, 避免每次查找算法提供者
+	 */
+	static MessageDigest getMD5() {
+		MessageDigest md5 = local.get();
+		md5.reset();
+		return md5;
+	}
+
+	/**
+	 * 计算单个文件MD5值的任务
+	 */
+	private static class DigestTask implements Callable<String> {
+
+		private File file;
+
+		public DigestTask(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public String call() throws Exception {
+			return digest(file);
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package org.lychie.jutil;
+
+import java.util.Deque;
+import java.util.zip.CRC32;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.io.EOFException;
+import java.util.zip.Inflater;
+import java.io.FilterInputStream;
+import java.util.zip.ZipException;
+import java.util.concurrent.Future;
+import java.io.SequenceInputStream;
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 并行解压的 gzip 输入流. 由 ParallelGZIPOutputStream 写出的成员在头部记录了成员的字节数,
+ * 可以不经解压就切分出来, 交给多个线程同时解压. 遇到不含该记录的成员(如其他 gzip
+ * 工具压缩的内容)时, 从该成员开始退化为 GZIPInputStream 顺序解压
+ * 
+ * @author Lychie Fan
+ */
+class ParallelGZIPInputStream extends FilterInputStream {
+
+	private static final int EOF = -1;
+	private static final int MAX_BLOCK_SIZE = 1024 * 1024 * 64;
+
+	private byte[] block;
+	private int position;
+	private int parallelism;
+	private boolean finished;
+	private InputStream fallback;
+	private ExecutorService executor;
+	private Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	/**
+	 * @param in
+	 *            输入流
+	 * @param parallelism
+	 *            并行解压的线程数
+	 */
+	ParallelGZIPInputStream(InputStream in, int parallelism) {
+		super(in);
+		this.parallelism = parallelism;
+		// 守护线程保证流未关闭时不阻止 JVM 退出
+		this.executor = Executors.newFixedThreadPool(parallelism,
+				new DaemonThreadFactory("jutil-gzip-inflate"));
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == EOF ? EOF : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		while (block == null || position == block.length) {
+			if (!next()) {
+				return fallback != null ? fallback.read(bytes, offset, length)
+						: EOF;
+			}
+		}
+		int n = Math.min(length, block.length - position);
+		System.arraycopy(block, position, bytes, offset, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (block != null && position < block.length) {
+			return block.length - position;
+		}
+		return fallback != null ? fallback.available() : 0;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		int read;
+		while (skipped < n
+				&& (read = read(buffer, 0, (int) Math.min(buffer.length, n
+						- skipped))) != EOF) {
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		if (fallback != null) {
+			fallback.close();
+		} else {
+			in.close();
+		}
+	}
+
+	/**
+	 * 取出下一个已解压的块, 队列中保持若干个正在解压的成员
+	 * 
+	 * @return 没有更多的块时返回 false
+	 */
+	private boolean next() throws IOException {
+		try {
+			return poll();
+		} catch (IOException e) {
+			// 读取失败后流已不可用, 立即停止线程池, 不必等到关闭流
+			executor.shutdownNow();
+			throw e;
+		}
+	}
+
+	private boolean poll() throws IOException {
+		while (!finished && pending.size() < parallelism * 2) {
+			byte[] member = readMember();
+			if (member == null) {
+				finished = true;
+			} else {
+				pending.add(executor.submit(new InflateTask(member)));
+			}
+		}
+		if (pending.isEmpty()) {
+			return false;
+		}
+		try {
+			block = pending.poll().get();
+			position = 0;
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * 读出一个完整的成员, 遇到不含成员字节数记录的成员时切换到顺序解压
+	 * 
+	 * @return 流结束或切换到顺序解压时返回 null
+	 */
+	private byte[] readMember() throws IOException {
+		byte[] header = new byte[ParallelGZIPOutputStream.HEADER_SIZE];
+		int first = in.read();
+		if (first == EOF) {
+			return null;
+		}
+		header[0] = (byte) first;
+		int read = 1 + readFully(header, 1, header.length - 1);
+		int size = memberSize(header, read);
+		if (size == EOF) {
+			// 剩余的内容交给 GZIPInputStream, 已读出的头部字节放回流的前面
+			InputStream rest = new SequenceInputStream(
+					new ByteArrayInputStream(header, 0, read), in);
+			fallback = new GZIPInputStream(rest);
+			return null;
+		}
+		byte[] member = new byte[size];
+		System.arraycopy(header, 0, member, 0, header.length);
+		if (readFully(member, header.length, size - header.length) < size
+				- header.length) {
+			throw new EOFException("Unexpected end of gzip stream");
+		}
+		return member;
+	}
+
+	/**
+	 * 解析 ParallelGZIPOutputStream 写出的成员头
+	 * 
+	 * @return 成员的总字节数, 不是该格式时返回 -1
+	 */
+	private static int memberSize(byte[] header, int length) {
+		if (length < header.length || (header[0] & 0xff) != 0x1f
+				|| (header[1] & 0xff) != 0x8b || header[2] != 8
+				|| header[3] != 4 || header[10] != 8 || header[11] != 0
+				|| header[12] != ParallelGZIPOutputStream.SUBFIELD_ID1
+				|| header[13] != ParallelGZIPOutputStream.SUBFIELD_ID2
+				|| header[14] != 4 || header[15] != 0) {
+			return EOF;
+		}
+		int size = readInt(header, 16);
+		if (size < header.length + ParallelGZIPOutputStream.TRAILER_SIZE
+				|| size > MAX_BLOCK_SIZE) {
+			return EOF;
+		}
+		return size;
+	}
+
+	private int readFully(byte[] bytes, int offset, int length)
+			throws IOException {
+		int total = 0;
+		int read;
+		while (total < length
+				&& (read = in.read(bytes, offset + total, length - total)) != EOF) {
+			total += read;
+		}
+		return total;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+				| (bytes[offset + 2] & 0xff) << 16
+				| (bytes[offset + 3] & 0xff) << 24;
+	}
+
+	/**
+	 * 解压一个完整的 gzip 成员并校验 CRC 和长度
+	 */
+	private static class InflateTask implements Callable<byte[]> {
+
+		private byte[] member;
+
+		public InflateTask(byte[] member) {
+			this.member = member;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			int trailer = member.length - ParallelGZIPOutputStream.TRAILER_SIZE;
+			int size = readInt(member, trailer + 4);
+			if (size < 0 || size > MAX_BLOCK_SIZE) {
+				throw new ZipException("Corrupt gzip member");
+			}
+			byte[] data = new byte[size];
+			Inflater inflater = new Inflater(true);
+			try {
+				int offset = ParallelGZIPOutputStream.HEADER_SIZE;
+				inflater.setInput(member, offset, trailer - offset);
+				int length = 0;
+				while (!inflater.finished() && length < size) {
+					int n = inflater.inflate(data, length, size - length);
+					if (n == 0 && (inflater.needsInput() || inflater
+							.needsDictionary())) {
+						break;
+					}
+					length += n;
+				}
+				if (length == size && !inflater.finished()) {
+					// 再尝试一次, 以便读到 deflate 流的结束标记
+					inflater.inflate(new byte[1]);
+				}
+				CRC32 crc = new CRC32();
+				crc.update(data, 0, length);
+				if (!inflater.finished() || length != size
+						|| (int) crc.getValue() != readInt(member, trailer)) {
+					throw new ZipException("Corrupt gzip member");
+				}
+				return data;
+			} finally {
+				inflater.end();
+			}
+		}
+
+	}
+
+}
\ No newline at end of file
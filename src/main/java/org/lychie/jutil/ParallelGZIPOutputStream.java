@@ -0,0 +1,208 @@
+package org.lychie.jutil;
+
+import java.util.Deque;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.io.FilterOutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 并行压缩的 gzip 输出流. 输入被切分成独立的块, 由多个线程同时压缩, 每块按顺序写出为一个
+ * gzip 成员, 输出是标准的多成员 gzip 格式, 任何 gzip 工具都可以解压. 每个成员的头部在
+ * FEXTRA 字段中记录了成员的总字节数, 使 ParallelGZIPInputStream 能够并行解压
+ * 
+ * @author Lychie Fan
+ */
+class ParallelGZIPOutputStream extends FilterOutputStream {
+
+	static final int BLOCK_SIZE = 1024 * 1024;
+	static final int HEADER_SIZE = 20;
+	static final int TRAILER_SIZE = 8;
+	static final byte SUBFIELD_ID1 = 'J';
+	static final byte SUBFIELD_ID2 = 'U';
+
+	private int count;
+	private byte[] block;
+	private int parallelism;
+	private boolean closed;
+	/* 是否已提交过成员, flush 之后队列为空, 不能据此判断 */
+	private boolean written;
+	private ExecutorService executor;
+	private Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	/**
+	 * @param out
+	 *            输出流
+	 * @param parallelism
+	 *            并行压缩的线程数
+	 */
+	ParallelGZIPOutputStream(OutputStream out, int parallelism) {
+		super(out);
+		this.parallelism = parallelism;
+		this.block = new byte[BLOCK_SIZE];
+		// 线程池最后创建, 之前的初始化失败时不会遗留线程; 守护线程保证流未关闭时不阻止 JVM 退出
+		this.executor = Executors.newFixedThreadPool(parallelism,
+				new DaemonThreadFactory("jutil-gzip-deflate"));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		block[count++] = (byte) b;
+		if (count == BLOCK_SIZE) {
+			submit();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			int n = Math.min(length, BLOCK_SIZE - count);
+			System.arraycopy(bytes, offset, block, count, n);
+			count += n;
+			offset += n;
+			length -= n;
+			if (count == BLOCK_SIZE) {
+				submit();
+			}
+		}
+	}
+
+	/**
+	 * 压缩已写入的内容并等待写出, 不完整的块作为一个较小的成员写出
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (count > 0) {
+			submit();
+		}
+		drain(0);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			// 没有任何输入时也写出一个空的成员, 保证输出是合法的 gzip 格式
+			if (count > 0 || !written) {
+				submit();
+			}
+			drain(0);
+			out.flush();
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+	private void submit() throws IOException {
+		pending.add(executor.submit(new DeflateTask(Arrays.copyOf(block,
+				count))));
+		count = 0;
+		written = true;
+		drain(parallelism * 2);
+	}
+
+	/**
+	 * 按顺序写出已压缩的成员, 直到队列中不超过指定数量的未完成的块
+	 */
+	private void drain(int limit) throws IOException {
+		while (pending.size() > limit) {
+			try {
+				out.write(pending.poll().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw fail(new IOException(e));
+			} catch (ExecutionException e) {
+				throw fail(new IOException(e.getCause()));
+			} catch (IOException e) {
+				throw fail(e);
+			}
+		}
+	}
+
+	/**
+	 * 写出失败后流已不可用, 立即停止线程池, 不必等到关闭流
+	 */
+	private IOException fail(IOException e) {
+		executor.shutdownNow();
+		return e;
+	}
+
+	/**
+	 * 将一块内容压缩为一个完整的 gzip 成员
+	 */
+	private static class DeflateTask implements Callable<byte[]> {
+
+		private byte[] data;
+
+		public DeflateTask(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				deflater.setInput(data);
+				deflater.finish();
+				byte[] member = new byte[HEADER_SIZE + data.length
+						+ data.length / 1000 + 64 + TRAILER_SIZE];
+				int length = HEADER_SIZE;
+				while (!deflater.finished()) {
+					if (length == member.length - TRAILER_SIZE) {
+						member = Arrays.copyOf(member, member.length * 2);
+					}
+					length += deflater.deflate(member, length, member.length
+							- TRAILER_SIZE - length);
+				}
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				int size = length + TRAILER_SIZE;
+				writeHeader(member, size);
+				writeInt(member, length, (int) crc.getValue());
+				writeInt(member, length + 4, data.length);
+				return Arrays.copyOf(member, size);
+			} finally {
+				deflater.end();
+			}
+		}
+
+		/**
+		 * gzip 成员头: 魔数, deflate, FLG.FEXTRA, MTIME=0, XFL=0, OS=unknown,
+		 * XLEN=8, 子字段 'J' 'U' LEN=4 成员总字节数
+		 */
+		private static void writeHeader(byte[] member, int size) {
+			member[0] = (byte) 0x1f;
+			member[1] = (byte) 0x8b;
+			member[2] = Deflater.DEFLATED;
+			member[3] = 4;
+			member[9] = (byte) 0xff;
+			member[10] = 8;
+			member[12] = SUBFIELD_ID1;
+			member[13] = SUBFIELD_ID2;
+			member[14] = 4;
+			writeInt(member, 16, size);
+		}
+
+		private static void writeInt(byte[] bytes, int offset, int value) {
+			bytes[offset] = (byte) value;
+			bytes[offset + 1] = (byte) (value >>> 8);
+			bytes[offset + 2] = (byte) (value >>> 16);
+			bytes[offset + 3] = (byte) (value >>> 24);
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package org.lychie.jutil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速器, 按每秒字节数限制IO带宽. 同一个限速器可以被多个线程同时使用,
+ * 限制的是它们的总带宽. 令牌不足时允许透支, 透支的部分由之后的请求等待偿还,
+ * 因此大块的请求不会被饿死. 空闲时最多积累0.1秒的令牌, 速率可以在运行时调整
+ * 
+ * @author Lychie Fan
+ */
+public class RateLimiter {
+
+	private static final double BURST_SECONDS = 0.1;
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+
+	private long rate;
+	private double tokens;
+	private long lastNanos;
+
+	/**
+	 * 创建限速器
+	 * 
+	 * @param bytesPerSecond
+	 *            每秒允许的字节数
+	 */
+	public RateLimiter(long bytesPerSecond) {
+		checkRate(bytesPerSecond);
+		this.rate = bytesPerSecond;
+		this.lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * 调整速率, 对之后的请求生效
+	 * 
+	 * @param bytesPerSecond
+	 *            每秒允许的字节数
+	 */
+	public synchronized void setRate(long bytesPerSecond) {
+		checkRate(bytesPerSecond);
+		refill();
+		this.rate = bytesPerSecond;
+	}
+
+	/**
+	 * 每秒允许的字节数
+	 * 
+	 * @return
+	 */
+	public synchronized long getRate() {
+		return rate;
+	}
+
+	/**
+	 * 获取指定字节数的许可, 令牌不足时等待
+	 * 
+	 * @param bytes
+	 *            字节数
+	 * @throws InterruptedException
+	 */
+	public void acquire(long bytes) throws InterruptedException {
+		if (bytes <= 0) {
+			return;
+		}
+		long waitNanos;
+		synchronized (this) {
+			refill();
+			tokens -= bytes;
+			waitNanos = tokens < 0 ? (long) (-tokens * NANOS_PER_SECOND / rate)
+					: 0;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RateLimiter[rate=" + getRate() + "]";
+	}
+
+	/**
+	 * 按经过的时间补充令牌, 最多积累 BURST_SECONDS 秒的令牌
+	 */
+	private void refill() {
+		long now = System.nanoTime();
+		double burst = rate * BURST_SECONDS;
+		tokens = Math.min(burst, tokens + (now - lastNanos) * rate
+				/ NANOS_PER_SECOND);
+		lastNanos = now;
+	}
+
+	private static void checkRate(long bytesPerSecond) {
+		if (bytesPerSecond < 1) {
+			throw new IllegalArgumentException(
+					"bytesPerSecond must be greater than 0");
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package org.lychie.jutil;
+
+import java.util.Map;
+import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类路径资源的内存缓存. 资源的内容在第一次读取后保存在堆内或直接内存中, 之后的读取返回
+ * 缓存内容之上的输入流, 不再访问类加载器. 缓存的总字节数有上限, 超出时淘汰最久未使用的资源,
+ * 超过上限的单个资源不被缓存
+ * 
+ * @author Lychie Fan
+ */
+public class ResourceCache {
+
+	private static final long DEFAULT_MAX_BYTES = 1024 * 1024 * 32;
+	private static final ResourceCache defaultCache = new ResourceCache(
+			DEFAULT_MAX_BYTES, false);
+
+	private final long maxBytes;
+	private final boolean direct;
+	private long bytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final Map<String, ByteBuffer> cache = new LinkedHashMap<String, ByteBuffer>(
+			16, 0.75f, true);
+
+	/**
+	 * 创建资源缓存
+	 * 
+	 * @param maxBytes
+	 *            缓存的最大总字节数
+	 * @param direct
+	 *            是否将资源内容保存在直接内存(堆外)中
+	 */
+	public ResourceCache(long maxBytes, boolean direct) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException(
+					"maxBytes must be greater than 0");
+		}
+		this.maxBytes = maxBytes;
+		this.direct = direct;
+	}
+
+	/**
+	 * 获取默认的资源缓存, 最多缓存32M堆内内存
+	 * 
+	 * @return
+	 */
+	public static ResourceCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * 获取CLASSPATH类路径下的文件输入流, 优先从缓存读取
+	 * 
+	 * @param pathname
+	 *            相对于类路径下的文件路径名称
+	 * @return 资源不存在时返回null
+	 */
+	public InputStream getResourceAsStream(String pathname) {
+		ByteBuffer buffer;
+		synchronized (this) {
+			buffer = cache.get(pathname);
+		}
+		if (buffer != null) {
+			hits.incrementAndGet();
+			return new ByteBufferInputStream(buffer.duplicate());
+		}
+		misses.incrementAndGet();
+		InputStream in = ClassLoader.getSystemClassLoader()
+				.getResourceAsStream(pathname);
+		if (in == null) {
+			return null;
+		}
+		buffer = wrap(IOUtil.readFully(in));
+		put(pathname, buffer);
+		return new ByteBufferInputStream(buffer.duplicate());
+	}
+
+	/**
+	 * 移除缓存的资源
+	 * 
+	 * @param pathname
+	 *            相对于类路径下的文件路径名称
+	 */
+	public synchronized void invalidate(String pathname) {
+		ByteBuffer buffer = cache.remove(pathname);
+		if (buffer != null) {
+			bytes -= buffer.capacity();
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * 缓存的最大总字节数
+	 * 
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * 当前缓存的总字节数
+	 * 
+	 * @return
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * 当前缓存的资源个数
+	 * 
+	 * @return
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * 从缓存读取的次数
+	 * 
+	 * @return
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * 缓存中没有而从类加载器读取的次数
+	 * 
+	 * @return
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * 因超出字节数上限而被淘汰的资源个数
+	 * 
+	 * @return
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ResourceCache[maxBytes=" + maxBytes + ", bytes=" + getBytes()
+				+ ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", evictions=" + getEvictions() + "]";
+	}
+
+	private ByteBuffer wrap(byte[] data) {
+		if (!direct) {
+			return ByteBuffer.wrap(data).asReadOnlyBuffer();
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+		buffer.put(data);
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * 放入缓存, 淘汰最久未使用的资源直到总字节数不超过上限
+	 */
+	private synchronized void put(String pathname, ByteBuffer buffer) {
+		int size = buffer.capacity();
+		if (size > maxBytes) {
+			return;
+		}
+		ByteBuffer previous = cache.put(pathname, buffer);
+		if (previous != null) {
+			bytes -= previous.capacity();
+		}
+		bytes += size;
+		Iterator<ByteBuffer> iterator = cache.values().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			ByteBuffer eldest = iterator.next();
+			if (eldest == buffer) {
+				continue;
+			}
+			iterator.remove();
+			bytes -= eldest.capacity();
+			evictions.incrementAndGet();
+		}
+	}
+
+}
\ No newline at end of file
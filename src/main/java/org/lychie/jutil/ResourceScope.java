@@ -0,0 +1,172 @@
+package org.lychie.jutil;
+
+import java.util.Set;
+import java.util.List;
+import java.util.Deque;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.PhantomReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 资源作用域. 登记打开的流或通道, 关闭作用域时按登记的相反顺序逐个关闭.
+ * 开启泄漏检测(系统属性 jutil.leakDetection=true 或 setLeakDetection)后, 登记时会记录资源的
+ * 打开位置, 作用域未关闭就被回收时, 其中未关闭的资源被关闭, 打开位置可以通过 getLeaks 获取
+ * 
+ * @author Lychie Fan
+ */
+public class ResourceScope implements Closeable {
+
+	private static final int MAX_LEAKS = 256;
+	private static volatile boolean leakDetection = Boolean
+			.getBoolean("jutil.leakDetection");
+	private static final List<Throwable> leaks = new ArrayList<Throwable>();
+	private static final ReferenceQueue<ResourceScope> queue = new ReferenceQueue<ResourceScope>();
+	private static final Set<Tracker> trackers = Collections
+			.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+
+	private boolean closed;
+	private Tracker tracker;
+	private Deque<Entry> resources = new ArrayDeque<Entry>();
+
+	ResourceScope() {
+		expunge();
+		if (leakDetection) {
+			tracker = new Tracker(this, resources);
+			trackers.add(tracker);
+		}
+	}
+
+	/**
+	 * 登记资源, 作用域已关闭时立即关闭该资源并抛出异常
+	 * 
+	 * @param resource
+	 *            流或通道
+	 * @return 参数指定的资源
+	 */
+	public synchronized <T extends Closeable> T register(T resource) {
+		if (closed) {
+			IOUtil.close(resource);
+			throw new IllegalStateException("scope is closed");
+		}
+		Throwable site = null;
+		if (tracker != null) {
+			site = new Throwable(resource.getClass().getName()
+					+ " was opened here but never closed");
+		}
+		synchronized (resources) {
+			resources.push(new Entry(resource, site));
+		}
+		return resource;
+	}
+
+	/**
+	 * 按登记的相反顺序关闭所有资源, 可重复调用
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		release(resources);
+		if (tracker != null) {
+			trackers.remove(tracker);
+			tracker.clear();
+		}
+	}
+
+	/**
+	 * 开启或关闭泄漏检测, 只影响之后创建的作用域
+	 * 
+	 * @param enabled
+	 *            是否开启
+	 */
+	public static void setLeakDetection(boolean enabled) {
+		leakDetection = enabled;
+	}
+
+	/**
+	 * 是否开启了泄漏检测
+	 * 
+	 * @return
+	 */
+	public static boolean isLeakDetection() {
+		return leakDetection;
+	}
+
+	/**
+	 * 获取已发现的泄漏资源的打开位置, 最多保留最近的256个
+	 * 
+	 * @return
+	 */
+	public static List<Throwable> getLeaks() {
+		expunge();
+		synchronized (leaks) {
+			return new ArrayList<Throwable>(leaks);
+		}
+	}
+
+	/**
+	 * 处理未关闭就被回收的作用域: 记录其中资源的打开位置并关闭资源
+	 */
+	private static void expunge() {
+		Tracker tracker;
+		while ((tracker = (Tracker) queue.poll()) != null) {
+			trackers.remove(tracker);
+			synchronized (leaks) {
+				synchronized (tracker.resources) {
+					for (Entry entry : tracker.resources) {
+						if (leaks.size() == MAX_LEAKS) {
+							leaks.remove(0);
+						}
+						leaks.add(entry.site);
+					}
+				}
+			}
+			release(tracker.resources);
+		}
+	}
+
+	private static void release(Deque<Entry> resources) {
+		synchronized (resources) {
+			Entry entry;
+			while ((entry = resources.poll()) != null) {
+				IOUtil.close(entry.resource);
+			}
+		}
+	}
+
+	/**
+	 * 登记的资源及其打开位置
+	 */
+	private static class Entry {
+
+		private Closeable resource;
+		private Throwable site;
+
+		public Entry(Closeable resource, Throwable site) {
+			this.resource = resource;
+			this.site = site;
+		}
+
+	}
+
+	/**
+	 * 跟踪作用域是否在关闭之前被回收, 只持有资源而不持有作用域本身
+	 */
+	private static class Tracker extends PhantomReference<ResourceScope> {
+
+		private Deque<Entry> resources;
+
+		public Tracker(ResourceScope scope, Deque<Entry> resources) {
+			super(scope, queue);
+			this.resources = resources;
+		}
+
+	}
+
+}
\ No newline at end of file
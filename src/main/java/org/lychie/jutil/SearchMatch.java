@@ -0,0 +1,52 @@
+package org.lychie.jutil;
+
+/**
+ * 文件内容搜索的匹配结果
+ * 
+ * @author Lychie Fan
+ */
+public class SearchMatch {
+
+	private String pattern;
+	private long offset;
+	private long line;
+
+	SearchMatch(String pattern, long offset, long line) {
+		this.pattern = pattern;
+		this.offset = offset;
+		this.line = line;
+	}
+
+	/**
+	 * 匹配的字符串
+	 * 
+	 * @return
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * 匹配位置相对于文件开头的字节偏移量
+	 * 
+	 * @return
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * 匹配位置所在的行号, 从1开始
+	 * 
+	 * @return
+	 */
+	public long getLine() {
+		return line;
+	}
+
+	@Override
+	public String toString() {
+		return line + ":" + offset + ":" + pattern;
+	}
+
+}